@@ -7,15 +7,17 @@ import com.yada.user.UserManager;
 import com.yada.util.Command;
 import com.yada.util.AddFoodCommand;
 import com.yada.util.RemoveFoodCommand;
+import com.yada.util.FoodImportManager;
+import com.yada.util.FoodImportException;
 
+import java.io.File;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 
-// import com.yada.util.FoodImportManager;
-// import com.yada.util.FoodImportException;
-
 /**
  * Main class for the diet management application.
  */
@@ -27,7 +29,7 @@ public class DietManager {
     private Stack<Command> undoStack;
     private Stack<Command> redoStack;
     private User currentUser;
-    // private final FoodImportManager foodImportManager;
+    private final FoodImportManager foodImportManager;
 
     
     
@@ -42,7 +44,7 @@ public class DietManager {
         undoStack = new Stack<>();
         redoStack = new Stack<>();
         currentUser = null;
-        // this.foodImportManager = new FoodImportManager();
+        this.foodImportManager = new FoodImportManager();
 
 
         // Debug output
@@ -71,6 +73,7 @@ public class DietManager {
         // Load profile for this user or create a new one
         if (user != null) {
             userProfile = new UserProfile(user.getUsername());
+            dailyLog.loadUser(user.getUsername());
             // Make sure the profile is loaded correctly
             System.out.println("Setting current user: " + user.getUsername() + 
                             ", Profile username: " + userProfile.getUsername());
@@ -250,23 +253,33 @@ public class DietManager {
 
 
     /**
-     * Import food data from external sources
+     * Import food data from a local source file (CSV or JSON lines)
      * 
-     * @param source The data source identifier (e.g., "usda", "mcdonalds")
-     * @param query The search query
-     * @return List of imported foods
+     * @param file The file to import
+     * @param listener Receives the number of lines read, or null
+     * @return The counts of the import
      * @throws FoodImportException if import fails
      */
-    // public List<BasicFood> importFoodData(String source, String query) throws FoodImportException {
-    //     List<BasicFood> importedFoods = foodImportManager.importFromSource(source, query);
-
-    //     // Auto-add imported foods to database
-    //     for (BasicFood food : importedFoods) {
-    //         foodDatabase.addFood(food);
-    //     }
-
-    //     return importedFoods;
-    // }
+    public FoodImportManager.ImportResult importFoodData(File file, ProgressListener listener)
+            throws FoodImportException {
+        return foodImportManager.importFile(file, foodDatabase, listener);
+    }
+    
+    /**
+     * Import a USDA FoodData Central style food table joined with its
+     * food-nutrient table
+     * 
+     * @param foodFile The food table
+     * @param foodNutrientFile The food-nutrient table
+     * @param nutrientFile The nutrient table, or null
+     * @param listener Receives the number of food-nutrient rows processed, or null
+     * @return The counts of the import
+     * @throws FoodImportException if import fails
+     */
+    public FoodImportManager.ImportResult importUsdaData(File foodFile, File foodNutrientFile,
+            File nutrientFile, ProgressListener listener) throws FoodImportException {
+        return foodImportManager.importUsda(foodFile, foodNutrientFile, nutrientFile, foodDatabase, listener);
+    }
     
     /**
      * Undo the last command.
@@ -288,9 +301,9 @@ public class DietManager {
      * 
      * @return The food import manager instance
      */
-    // public FoodImportManager getFoodImportManager() {
-    //     return foodImportManager;
-    // }
+    public FoodImportManager getFoodImportManager() {
+        return foodImportManager;
+    }
     
     /**
      * Redo the last undone command.
@@ -335,12 +348,7 @@ public class DietManager {
         if (currentUser == null) {
             throw new IllegalStateException("No user is logged in.");
         }
-        List<LogEntry> entries = dailyLog.getEntriesForUserAndDate(currentUser.getUsername(), date); // Use user-specific method
-        double total = 0;
-        for (LogEntry entry : entries) {
-            total += entry.getCalories();
-        }
-        return total;
+        return dailyLog.getCaloriesForUserAndDate(currentUser.getUsername(), date);
     }
     
     /**
@@ -362,6 +370,75 @@ public class DietManager {
         return getTargetCalories() - getCaloriesConsumed(date);
     }
     
+    /**
+     * Get the calories consumed by the current user in a date range.
+     * 
+     * @param from The first date, inclusive
+     * @param to The last date, inclusive
+     * @return The calories consumed
+     */
+    public double getCaloriesConsumed(LocalDate from, LocalDate to) {
+        return dailyLog.getCaloriesForUserBetween(requireUsername(), from, to);
+    }
+    
+    /**
+     * Get the average calories per logged day of the current user over the
+     * days ending on a date, e.g. the last 7 or 30 days.
+     * 
+     * @param to The last date, inclusive
+     * @param days The number of days
+     * @return The average calories
+     */
+    public double getAverageCaloriesConsumed(LocalDate to, int days) {
+        return dailyLog.getAverageCaloriesForUser(requireUsername(), to, days);
+    }
+    
+    /**
+     * Get the calories consumed by the current user in each week of a date range.
+     * 
+     * @param from The first date, inclusive
+     * @param to The last date, inclusive
+     * @return The calories by the Monday starting each week
+     */
+    public Map<LocalDate, Double> getWeeklyCaloriesConsumed(LocalDate from, LocalDate to) {
+        return dailyLog.getWeeklyCaloriesForUser(requireUsername(), from, to);
+    }
+    
+    /**
+     * Get the calories consumed by the current user in each month of a date range.
+     * 
+     * @param from The first date, inclusive
+     * @param to The last date, inclusive
+     * @return The calories by month
+     */
+    public Map<YearMonth, Double> getMonthlyCaloriesConsumed(LocalDate from, LocalDate to) {
+        return dailyLog.getMonthlyCaloriesForUser(requireUsername(), from, to);
+    }
+    
+    /**
+     * Get the dates on which the current user logged food in a date range.
+     * 
+     * @param from The first date, inclusive
+     * @param to The last date, inclusive
+     * @return The dates, in order
+     */
+    public List<LocalDate> getLoggedDates(LocalDate from, LocalDate to) {
+        return dailyLog.getDatesForUserBetween(requireUsername(), from, to);
+    }
+    
+    /**
+     * Get the username of the current user.
+     * 
+     * @return The username
+     * @throws IllegalStateException if no user is logged in
+     */
+    private String requireUsername() {
+        if (currentUser == null) {
+            throw new IllegalStateException("No user is logged in.");
+        }
+        return currentUser.getUsername();
+    }
+    
     /**
      * Search foods by keywords.
      * 
@@ -372,6 +449,30 @@ public class DietManager {
         return foodDatabase.searchFoods(keywords);
     }
     
+    /**
+     * Search foods by keywords, returning one page of the best matches.
+     * 
+     * @param keywords The keywords to search for
+     * @param offset The number of top matches to skip
+     * @param limit The maximum number of matches to return
+     * @return The matching foods, best first
+     */
+    public List<Food> searchFoods(String keywords, int offset, int limit) {
+        return foodDatabase.searchFoods(keywords, offset, limit);
+    }
+    
+    /**
+     * Search foods by keywords, tolerating typos.
+     * 
+     * @param keywords The keywords to search for
+     * @param maxDistance The maximum edit distance per word
+     * @param limit The maximum number of matches to return
+     * @return The matching foods, closest first
+     */
+    public List<Food> fuzzySearchFoods(String keywords, int maxDistance, int limit) {
+        return foodDatabase.fuzzySearchFoods(keywords, maxDistance, limit);
+    }
+    
     /**
      * Main method to start the application.
      * 
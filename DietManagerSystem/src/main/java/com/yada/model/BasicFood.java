@@ -1,34 +1,207 @@
 // src/main/java/com/yada/model/BasicFood.java
 package com.yada.model;
 
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 public class BasicFood extends Food {
+    private static final int[] NO_ORDINALS = new int[0];
+    private static final double[] NO_AMOUNTS = new double[0];
+
     private double caloriesPerServing;
-    private Map<String, Double> nutrients;
+
+    // Nutrients as parallel arrays sorted by NutrientDictionary ordinal, in
+    // one immutable holder replaced as a whole on every change so that
+    // readers on other threads never see the arrays of two versions; null
+    // while they are only in the snapshot
+    private volatile LazyFoodDetails.Nutrients nutrients;
+
+    // Snapshot the nutrients are read from until the food is modified; see LazyFoodDetails
+    private final LazyFoodDetails details;
+    private final int detailsIndex;
 
     public BasicFood(String identifier, String[] keywords, double caloriesPerServing) {
         super(identifier, keywords);
         this.caloriesPerServing = caloriesPerServing;
-        this.nutrients = new HashMap<>();
-        this.nutrients.put("calories", caloriesPerServing);
+        this.nutrients = new LazyFoodDetails.Nutrients(NO_ORDINALS, NO_AMOUNTS);
+        this.details = null;
+        this.detailsIndex = -1;
+        addNutrient("calories", caloriesPerServing);
+    }
+
+    /**
+     * Constructor for a basic food whose nutrients are read from the
+     * snapshot on first access.
+     *
+     * @param identifier The food identifier
+     * @param keywords The keywords
+     * @param caloriesPerServing The calories per serving
+     * @param details The lazily read snapshot details
+     * @param detailsIndex The position of the food in the snapshot
+     */
+    BasicFood(String identifier, String[] keywords, double caloriesPerServing,
+            LazyFoodDetails details, int detailsIndex) {
+        super(identifier, keywords);
+        this.caloriesPerServing = caloriesPerServing;
+        this.details = details;
+        this.detailsIndex = detailsIndex;
     }
 
-    public void addNutrient(String name, double amount) {
-        nutrients.put(name.toLowerCase(), amount);
+    public synchronized void addNutrient(String name, double amount) {
+        // A modified food keeps its own nutrients from now on
+        LazyFoodDetails.Nutrients current = getNutrients();
+        int ordinal = NutrientDictionary.ordinal(name.toLowerCase());
+        int index = Arrays.binarySearch(current.ordinals, ordinal);
+        if (index >= 0) {
+            double[] amounts = current.amounts.clone();
+            amounts[index] = amount;
+            nutrients = new LazyFoodDetails.Nutrients(current.ordinals, amounts);
+            return;
+        }
+
+        // Grow by exactly one slot to keep the arrays compact
+        int insertAt = -index - 1;
+        int length = current.ordinals.length;
+        int[] ordinals = new int[length + 1];
+        double[] amounts = new double[length + 1];
+        System.arraycopy(current.ordinals, 0, ordinals, 0, insertAt);
+        System.arraycopy(current.amounts, 0, amounts, 0, insertAt);
+        ordinals[insertAt] = ordinal;
+        amounts[insertAt] = amount;
+        System.arraycopy(current.ordinals, insertAt, ordinals, insertAt + 1, length - insertAt);
+        System.arraycopy(current.amounts, insertAt, amounts, insertAt + 1, length - insertAt);
+        nutrients = new LazyFoodDetails.Nutrients(ordinals, amounts);
     }
 
     public double getNutrient(String name) {
-        return nutrients.getOrDefault(name.toLowerCase(), 0.0);
+        int ordinal = NutrientDictionary.find(name.toLowerCase());
+        return ordinal < 0 ? 0.0 : getNutrient(ordinal);
+    }
+
+    /**
+     * Get the amount of a nutrient by dictionary ordinal.
+     *
+     * @param ordinal The nutrient ordinal
+     * @return The amount, or 0 if the food has no entry for it
+     */
+    double getNutrient(int ordinal) {
+        LazyFoodDetails.Nutrients current = getNutrients();
+        int index = Arrays.binarySearch(current.ordinals, ordinal);
+        return index >= 0 ? current.amounts[index] : 0.0;
+    }
+
+    /**
+     * Get the largest nutrient ordinal of this food.
+     *
+     * @return The ordinal, or -1 if the food has no nutrients
+     */
+    int getMaxNutrientOrdinal() {
+        int[] ordinals = getNutrients().ordinals;
+        return ordinals.length == 0 ? -1 : ordinals[ordinals.length - 1];
     }
 
+    /**
+     * Add this food's nutrients, scaled by a number of servings, to totals
+     * indexed by dictionary ordinal.
+     *
+     * @param totals The totals to add to, longer than getMaxNutrientOrdinal
+     * @param present Flags set for each nutrient the food has
+     * @param servings The number of servings
+     */
+    void addNutrientsTo(double[] totals, boolean[] present, double servings) {
+        LazyFoodDetails.Nutrients current = getNutrients();
+        for (int i = 0; i < current.ordinals.length; i++) {
+            totals[current.ordinals[i]] += current.amounts[i] * servings;
+            present[current.ordinals[i]] = true;
+        }
+    }
+
+    /**
+     * Get all nutrients as a read-only view backed by this food.
+     *
+     * @return The nutrient amounts by lowercase name
+     */
     public Map<String, Double> getAllNutrients() {
-        return new HashMap<>(nutrients);
+        return new NutrientView();
+    }
+
+    /**
+     * Get the current nutrient ordinals and amounts as one consistent pair.
+     *
+     * @return The nutrients, read from the snapshot if not modified
+     */
+    LazyFoodDetails.Nutrients getNutrients() {
+        LazyFoodDetails.Nutrients current = nutrients;
+        return current != null ? current : details.nutrients(detailsIndex, caloriesPerServing);
     }
 
     @Override
     public double getCaloriesPerServing() {
         return caloriesPerServing;
     }
-}
\ No newline at end of file
+
+    /**
+     * Read-only map over the nutrient arrays.
+     */
+    private class NutrientView extends AbstractMap<String, Double> {
+        @Override
+        public Double get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            int ordinal = NutrientDictionary.find((String) key);
+            LazyFoodDetails.Nutrients current = getNutrients();
+            int index = ordinal < 0 ? -1 : Arrays.binarySearch(current.ordinals, ordinal);
+            return index >= 0 ? current.amounts[index] : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return getNutrients().ordinals.length;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Double>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Double>>() {
+                @Override
+                public int size() {
+                    return getNutrients().ordinals.length;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, Double>> iterator() {
+                    LazyFoodDetails.Nutrients current = getNutrients();
+                    int[] ordinals = current.ordinals;
+                    double[] amounts = current.amounts;
+                    return new Iterator<Map.Entry<String, Double>>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < ordinals.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String, Double> next() {
+                            if (next >= ordinals.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int i = next++;
+                            return new AbstractMap.SimpleImmutableEntry<>(NutrientDictionary.name(ordinals[i]), amounts[i]);
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.yada.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sorted index of one user's daily calorie totals for range queries.
+ * Dates are stored in order as epoch days, with their totals in a Fenwick
+ * tree over the same positions, so the total of any date range is two
+ * binary searches and two prefix sums, however many days the range spans.
+ *
+ * DailyLog updates the index in place as entries change. Changing the
+ * total of a logged date or adding a date after the last one takes
+ * O(log n); only adding or dropping a date before the last one shifts the
+ * arrays and rebuilds the tree, in O(n).
+ */
+class CalorieIndex {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] days;
+
+    // tree[i] is the total of positions i - (i & -i) + 1 to i, counting from 1
+    private double[] tree;
+    private int size;
+
+    /**
+     * Constructor for CalorieIndex.
+     *
+     * @param totals The calories of each date with entries
+     */
+    public CalorieIndex(Map<LocalDate, Double> totals) {
+        days = new long[Math.max(INITIAL_CAPACITY, totals.size())];
+        for (LocalDate date : totals.keySet()) {
+            days[size++] = date.toEpochDay();
+        }
+        Arrays.sort(days, 0, size);
+
+        tree = new double[days.length + 1];
+        for (int i = 0; i < size; i++) {
+            tree[i + 1] = totals.get(LocalDate.ofEpochDay(days[i]));
+        }
+        build();
+    }
+
+    /**
+     * Add calories to the total of a date, adding the date if it has none.
+     *
+     * @param date The date
+     * @param calories The calories to add, negative to subtract
+     */
+    public void add(LocalDate date, double calories) {
+        long day = date.toEpochDay();
+        int position = lowerBound(day);
+        if (position < size && days[position] == day) {
+            for (int i = position + 1; i <= size; i += i & -i) {
+                tree[i] += calories;
+            }
+        } else if (position == size) {
+            ensureCapacity();
+            days[size] = day;
+            size++;
+            // The new node covers earlier positions too
+            int lowest = size & -size;
+            tree[size] = calories + prefix(size - 1) - prefix(size - lowest);
+        } else {
+            ensureCapacity();
+            unbuild();
+            System.arraycopy(days, position, days, position + 1, size - position);
+            System.arraycopy(tree, position + 1, tree, position + 2, size - position);
+            days[position] = day;
+            tree[position + 1] = calories;
+            size++;
+            build();
+        }
+    }
+
+    /**
+     * Drop a date from the index.
+     *
+     * @param date The date
+     */
+    public void remove(LocalDate date) {
+        long day = date.toEpochDay();
+        int position = lowerBound(day);
+        if (position == size || days[position] != day) {
+            return;
+        }
+        if (position < size - 1) {
+            unbuild();
+            System.arraycopy(days, position + 1, days, position, size - position - 1);
+            System.arraycopy(tree, position + 2, tree, position + 1, size - position - 1);
+            size--;
+            build();
+        } else {
+            // No node of an earlier position covers the last one
+            size--;
+        }
+    }
+
+    /**
+     * Get the calories logged in a date range.
+     *
+     * @param from The first date, inclusive
+     * @param to The last date, inclusive
+     * @return The total calories
+     */
+    public double total(LocalDate from, LocalDate to) {
+        int start = lowerBound(from.toEpochDay());
+        int end = lowerBound(to.toEpochDay() + 1);
+        return start < end ? prefix(end) - prefix(start) : 0.0;
+    }
+
+    /**
+     * Count the dates with entries in a date range.
+     *
+     * @param from The first date, inclusive
+     * @param to The last date, inclusive
+     * @return The number of dates
+     */
+    public int count(LocalDate from, LocalDate to) {
+        return Math.max(0, lowerBound(to.toEpochDay() + 1) - lowerBound(from.toEpochDay()));
+    }
+
+    /**
+     * Get the dates with entries in a date range.
+     *
+     * @param from The first date, inclusive
+     * @param to The last date, inclusive
+     * @return The dates, in order
+     */
+    public List<LocalDate> dates(LocalDate from, LocalDate to) {
+        List<LocalDate> dates = new ArrayList<>();
+        int end = lowerBound(to.toEpochDay() + 1);
+        for (int i = lowerBound(from.toEpochDay()); i < end; i++) {
+            dates.add(LocalDate.ofEpochDay(days[i]));
+        }
+        return dates;
+    }
+
+    /**
+     * Get the total of the first positions.
+     *
+     * @param count The number of positions
+     * @return The total
+     */
+    private double prefix(int count) {
+        double total = 0.0;
+        for (int i = count; i > 0; i -= i & -i) {
+            total += tree[i];
+        }
+        return total;
+    }
+
+    /**
+     * Turn the totals of each position in tree[1..size] into the tree.
+     */
+    private void build() {
+        for (int i = 1; i <= size; i++) {
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    /**
+     * Turn the tree back into the totals of each position, undoing build.
+     */
+    private void unbuild() {
+        for (int i = size; i >= 1; i--) {
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                tree[parent] -= tree[i];
+            }
+        }
+    }
+
+    /**
+     * Make room for one more date.
+     */
+    private void ensureCapacity() {
+        if (size == days.length) {
+            days = Arrays.copyOf(days, size * 2);
+            tree = Arrays.copyOf(tree, size * 2 + 1);
+        }
+    }
+
+    /**
+     * Find the first position whose day is not before a given day.
+     *
+     * @param day The epoch day
+     * @return The position, or the number of days if all are before it
+     */
+    private int lowerBound(long day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (days[middle] < day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
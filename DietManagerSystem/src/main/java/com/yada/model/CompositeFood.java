@@ -1,14 +1,31 @@
 package com.yada.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a composite food item made up of other foods.
  */
 public class CompositeFood extends Food {
-    private List<Food> components;
-    private List<Double> servings;
+    // Components and their servings as immutable lists, replaced as a whole
+    // on every change so that readers on other threads never see a list
+    // being modified; null while they are only in the snapshot
+    private volatile LazyFoodDetails.Components components;
+    
+    // Snapshot the components are read from until the food is modified; see LazyFoodDetails
+    private final LazyFoodDetails details;
+    private final int detailsIndex;
+    
+    // Memoized calories per serving, or NaN when they must be recomputed
+    private volatile double cachedCalories = Double.NaN;
+    
+    // Memoized leaf ingredients, or null when they must be recomputed
+    private volatile Leaves leaves;
     
     /**
      * Constructor for CompositeFood.
@@ -18,8 +35,43 @@ public class CompositeFood extends Food {
      */
     public CompositeFood(String identifier, String[] keywords) {
         super(identifier, keywords);
-        this.components = new ArrayList<>();
-        this.servings = new ArrayList<>();
+        this.components = new LazyFoodDetails.Components(Collections.emptyList(), Collections.emptyList());
+        this.details = null;
+        this.detailsIndex = -1;
+    }
+    
+    /**
+     * Constructor for a composite food with all its components at once.
+     * 
+     * @param identifier The food identifier
+     * @param keywords The keywords
+     * @param foods The component foods
+     * @param servings The servings of each component
+     */
+    CompositeFood(String identifier, String[] keywords, List<Food> foods, List<Double> servings) {
+        super(identifier, keywords);
+        this.components = new LazyFoodDetails.Components(Collections.unmodifiableList(new ArrayList<>(foods)),
+                Collections.unmodifiableList(new ArrayList<>(servings)));
+        this.details = null;
+        this.detailsIndex = -1;
+    }
+    
+    /**
+     * Constructor for a composite food whose components are read from the
+     * snapshot on first access.
+     * 
+     * @param identifier The food identifier
+     * @param keywords The keywords
+     * @param calories The calories per serving recorded in the snapshot
+     * @param details The lazily read snapshot details
+     * @param detailsIndex The position of the food in the snapshot
+     */
+    CompositeFood(String identifier, String[] keywords, double calories,
+            LazyFoodDetails details, int detailsIndex) {
+        super(identifier, keywords);
+        this.cachedCalories = calories;
+        this.details = details;
+        this.detailsIndex = detailsIndex;
     }
     
     /**
@@ -28,40 +80,276 @@ public class CompositeFood extends Food {
      * @param food The component food
      * @param servings The number of servings
      */
-    public void addComponent(Food food, double servings) {
-        components.add(food);
-        this.servings.add(servings);
+    public synchronized void addComponent(Food food, double servings) {
+        LazyFoodDetails.Components current = current();
+        List<Food> foods = new ArrayList<>(current.foods);
+        List<Double> amounts = new ArrayList<>(current.servings);
+        foods.add(food);
+        amounts.add(servings);
+        setComponents(foods, amounts);
+    }
+    
+    /**
+     * Replace every use of a component with another food, keeping the
+     * servings, after the component was updated in the database.
+     * 
+     * @param food The component to replace
+     * @param replacement The food to use instead
+     * @return true if the component was used by this composite
+     */
+    synchronized boolean replaceComponent(Food food, Food replacement) {
+        LazyFoodDetails.Components current = current();
+        List<Food> foods = new ArrayList<>(current.foods);
+        boolean replaced = false;
+        for (int i = 0; i < foods.size(); i++) {
+            if (foods.get(i) == food) {
+                foods.set(i, replacement);
+                replaced = true;
+            }
+        }
+        if (replaced) {
+            setComponents(foods, current.servings);
+        }
+        return replaced;
+    }
+    
+    /**
+     * Create a copy of this composite that uses new versions of some of its
+     * components. This composite is left untouched, so readers of catalog
+     * snapshots that still hold it keep seeing consistent totals.
+     * 
+     * @param replacements The new version of each replaced component, by old version
+     * @return The copy, with nothing memoized yet
+     */
+    CompositeFood relinked(Map<Food, Food> replacements) {
+        LazyFoodDetails.Components current = current();
+        List<Food> foods = new ArrayList<>(current.foods.size());
+        for (Food component : current.foods) {
+            Food replacement = replacements.get(component);
+            foods.add(replacement != null ? replacement : component);
+        }
+        return new CompositeFood(getIdentifier(), getKeywords(), foods, current.servings);
+    }
+    
+    /**
+     * Replace all components at once, so that a modified food keeps its own
+     * components from now on, and forget the totals computed from the old
+     * ones. The lists are published as they are and must not be modified
+     * afterwards.
+     * 
+     * @param foods The component foods
+     * @param amounts The servings of each component
+     */
+    synchronized void setComponents(List<Food> foods, List<Double> amounts) {
+        components = new LazyFoodDetails.Components(Collections.unmodifiableList(foods),
+                Collections.unmodifiableList(amounts));
+        invalidateTotals();
+    }
+    
+    /**
+     * Get the current components and servings as one consistent pair.
+     * 
+     * @return The components, read from the snapshot if not modified
+     */
+    private LazyFoodDetails.Components current() {
+        LazyFoodDetails.Components current = components;
+        return current != null ? current : details.components(detailsIndex);
+    }
+    
+    /**
+     * Forget the memoized calories and leaf ingredients, after a component
+     * changed. Composites that use this one must be invalidated too;
+     * FoodDatabase tracks them.
+     */
+    synchronized void invalidateTotals() {
+        cachedCalories = Double.NaN;
+        leaves = null;
     }
     
     /**
      * Get the components of this composite food.
      * 
-     * @return The component foods
+     * @return The component foods, as a read-only list
      */
     public List<Food> getComponents() {
-        return components;
+        return current().foods;
     }
     
     /**
      * Get the servings for each component.
      * 
-     * @return The servings
+     * @return The servings, as a read-only list
      */
     public List<Double> getServings() {
-        return servings;
+        return current().servings;
     }
     
     /**
-     * Get the calories per serving (sum of all components).
+     * Get the calories per serving (sum of all components). The sum is
+     * memoized until invalidateTotals is called.
      * 
      * @return The calories per serving
      */
     @Override
     public double getCaloriesPerServing() {
+        double cached = cachedCalories;
+        if (!Double.isNaN(cached)) {
+            return cached;
+        }
+        
+        // Computing under the lock keeps a concurrent invalidation from
+        // being overwritten by a sum of the old component values
+        synchronized (this) {
+            if (Double.isNaN(cachedCalories)) {
+                LazyFoodDetails.Components current = current();
+                List<Food> foods = current.foods;
+                List<Double> amounts = current.servings;
+                double total = 0;
+                for (int i = 0; i < foods.size(); i++) {
+                    total += foods.get(i).getCaloriesPerServing() * amounts.get(i);
+                }
+                cachedCalories = total;
+            }
+            return cachedCalories;
+        }
+    }
+    
+    /**
+     * Get the amount of a nutrient per serving, summed over the leaf
+     * ingredients.
+     * 
+     * @param name The nutrient name
+     * @return The amount, or 0 if no ingredient has the nutrient
+     */
+    public double getNutrient(String name) {
+        int ordinal = NutrientDictionary.find(name.toLowerCase());
+        if (ordinal < 0) {
+            return 0.0;
+        }
+        
+        Leaves flattened = getLeaves();
         double total = 0;
-        for (int i = 0; i < components.size(); i++) {
-            total += components.get(i).getCaloriesPerServing() * servings.get(i);
+        for (int i = 0; i < flattened.foods.length; i++) {
+            total += flattened.foods[i].getNutrient(ordinal) * flattened.servings[i];
         }
         return total;
     }
-}
\ No newline at end of file
+    
+    /**
+     * Get the amounts of all nutrients per serving, summed over the leaf
+     * ingredients in one pass.
+     * 
+     * @return The nutrient amounts by lowercase name, in dictionary order
+     */
+    public Map<String, Double> getAllNutrients() {
+        Leaves flattened = getLeaves();
+        int length = 0;
+        for (BasicFood food : flattened.foods) {
+            length = Math.max(length, food.getMaxNutrientOrdinal() + 1);
+        }
+        
+        double[] totals = new double[length];
+        boolean[] present = new boolean[length];
+        for (int i = 0; i < flattened.foods.length; i++) {
+            flattened.foods[i].addNutrientsTo(totals, present, flattened.servings[i]);
+        }
+        
+        Map<String, Double> nutrients = new LinkedHashMap<>();
+        for (int ordinal = 0; ordinal < totals.length; ordinal++) {
+            if (present[ordinal]) {
+                nutrients.put(NutrientDictionary.name(ordinal), totals[ordinal]);
+            }
+        }
+        return Collections.unmodifiableMap(nutrients);
+    }
+    
+    /**
+     * Get the basic foods this composite is made of, with the total
+     * servings of each per serving of the composite, flattening nested
+     * composites. Computed once and memoized until invalidateTotals.
+     * 
+     * @return The leaf ingredients
+     */
+    Leaves getLeaves() {
+        Leaves cached = leaves;
+        if (cached != null) {
+            return cached;
+        }
+        
+        synchronized (this) {
+            if (leaves == null) {
+                leaves = flatten();
+            }
+            return leaves;
+        }
+    }
+    
+    /**
+     * Flatten the components into leaf ingredients, merging repeated leaves.
+     * Nested composites contribute their own memoized leaves.
+     * 
+     * @return The leaf ingredients
+     */
+    private Leaves flatten() {
+        Map<BasicFood, Integer> positions = new IdentityHashMap<>();
+        BasicFood[] foods = new BasicFood[8];
+        double[] totals = new double[8];
+        int size = 0;
+        
+        LazyFoodDetails.Components current = current();
+        List<Food> components = current.foods;
+        List<Double> amounts = current.servings;
+        for (int i = 0; i < components.size(); i++) {
+            Food component = components.get(i);
+            double amount = amounts.get(i);
+            
+            BasicFood[] parts;
+            double[] partServings;
+            if (component instanceof BasicFood) {
+                parts = new BasicFood[] {(BasicFood) component};
+                partServings = new double[] {1.0};
+            } else if (component instanceof CompositeFood) {
+                Leaves nested = ((CompositeFood) component).getLeaves();
+                parts = nested.foods;
+                partServings = nested.servings;
+            } else {
+                // Other foods carry calories only
+                continue;
+            }
+            
+            for (int p = 0; p < parts.length; p++) {
+                Integer position = positions.get(parts[p]);
+                if (position == null) {
+                    if (size == foods.length) {
+                        foods = Arrays.copyOf(foods, size * 2);
+                        totals = Arrays.copyOf(totals, size * 2);
+                    }
+                    position = size++;
+                    positions.put(parts[p], position);
+                    foods[position] = parts[p];
+                }
+                totals[position] += partServings[p] * amount;
+            }
+        }
+        return new Leaves(Arrays.copyOf(foods, size), Arrays.copyOf(totals, size));
+    }
+    
+    /**
+     * Leaf ingredients of a composite as parallel arrays.
+     */
+    static class Leaves {
+        final BasicFood[] foods;
+        final double[] servings;
+        
+        /**
+         * Constructor for Leaves.
+         * 
+         * @param foods The distinct leaf foods
+         * @param servings The total servings of each leaf per serving of the composite
+         */
+        Leaves(BasicFood[] foods, double[] servings) {
+            this.foods = foods;
+            this.servings = servings;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.yada.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Links parsed composite foods to their components once every record of
+ * the foods file and journal has been read, so a component may be defined
+ * anywhere in the files.
+ *
+ * Composites that use other composites form a dependency graph. It is
+ * resolved in one topological pass (Kahn's algorithm) that links the
+ * composites level by level: a level holds the composites whose composite
+ * components are all in earlier levels, so the composites of one level are
+ * independent and large levels are linked in parallel. Composites left over
+ * are on or behind a cycle; the components that close a cycle are dropped
+ * with an error, since a cyclic recipe has no calorie total.
+ *
+ * Linking is O(composites + components).
+ */
+final class CompositeLinker {
+    /**
+     * Levels with at least this many composites are linked in parallel.
+     */
+    private static final int PARALLEL_LEVEL_SIZE = 1024;
+
+    private CompositeLinker() {
+    }
+
+    /**
+     * Link composite records to the foods their components name.
+     *
+     * @param records Parsed composite records, including ones replaced by a
+     *                later record with the same identifier
+     * @param foods The final foods by identifier
+     */
+    static void link(List<FoodFileParser.Record> records, Map<String, Food> foods) {
+        // Number the composite records
+        List<FoodFileParser.Record> composites = new ArrayList<>();
+        Map<Food, Integer> numbers = new HashMap<>();
+        for (FoodFileParser.Record record : records) {
+            if (record.getComponentIdentifiers() != null) {
+                numbers.put(record.getFood(), composites.size());
+                composites.add(record);
+            }
+        }
+        int count = composites.size();
+
+        // Resolve components and count dependencies on composites being linked
+        Food[][] resolved = new Food[count][];
+        int[] pendingDependencies = new int[count];
+        int[] dependentCounts = new int[count];
+        for (int i = 0; i < count; i++) {
+            String[] identifiers = composites.get(i).getComponentIdentifiers();
+            resolved[i] = new Food[identifiers.length];
+            for (int c = 0; c < identifiers.length; c++) {
+                Food component = foods.get(identifiers[c]);
+                resolved[i][c] = component;
+                Integer dependency = component == null ? null : numbers.get(component);
+                if (dependency != null) {
+                    pendingDependencies[i]++;
+                    dependentCounts[dependency]++;
+                }
+            }
+        }
+
+        // Reverse edges in compressed form: dependents[dependentStarts[d]...] depend on d
+        int[] dependentStarts = new int[count + 1];
+        for (int d = 0; d < count; d++) {
+            dependentStarts[d + 1] = dependentStarts[d] + dependentCounts[d];
+        }
+        int[] dependents = new int[dependentStarts[count]];
+        int[] filled = Arrays.copyOf(dependentStarts, count);
+        for (int i = 0; i < count; i++) {
+            for (Food component : resolved[i]) {
+                Integer dependency = component == null ? null : numbers.get(component);
+                if (dependency != null) {
+                    dependents[filled[dependency]++] = i;
+                }
+            }
+        }
+
+        List<Integer> level = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (pendingDependencies[i] == 0) {
+                level.add(i);
+            }
+        }
+        boolean[] linked = new boolean[count];
+        while (!level.isEmpty()) {
+            if (level.size() >= PARALLEL_LEVEL_SIZE) {
+                level.parallelStream().forEach(i -> linkComponents(composites.get(i), resolved[i]));
+            } else {
+                for (int i : level) {
+                    linkComponents(composites.get(i), resolved[i]);
+                }
+            }
+
+            List<Integer> next = new ArrayList<>();
+            for (int d : level) {
+                linked[d] = true;
+                for (int k = dependentStarts[d]; k < dependentStarts[d + 1]; k++) {
+                    if (--pendingDependencies[dependents[k]] == 0) {
+                        next.add(dependents[k]);
+                    }
+                }
+            }
+            level = next;
+        }
+
+        breakCycles(composites, resolved, numbers, linked);
+    }
+
+    /**
+     * Link the composites left over by the topological pass. A depth-first
+     * search over them finds the components that close a cycle, which are
+     * dropped; all other components are kept.
+     *
+     * @param composites The composite records
+     * @param resolved The resolved components of each composite
+     * @param numbers The number of each composite food
+     * @param linked Which composites are already linked
+     */
+    private static void breakCycles(List<FoodFileParser.Record> composites, Food[][] resolved,
+            Map<Food, Integer> numbers, boolean[] linked) {
+        int count = composites.size();
+        // 0 = not visited, 1 = on the current path, 2 = done
+        byte[] state = new byte[count];
+        int[] stack = new int[count];
+        int[] nextComponent = new int[count];
+
+        for (int start = 0; start < count; start++) {
+            if (linked[start] || state[start] != 0) {
+                continue;
+            }
+            int depth = 0;
+            stack[depth++] = start;
+            state[start] = 1;
+            while (depth > 0) {
+                int i = stack[depth - 1];
+                if (nextComponent[i] < resolved[i].length) {
+                    int c = nextComponent[i]++;
+                    Food component = resolved[i][c];
+                    Integer dependency = component == null ? null : numbers.get(component);
+                    if (dependency == null || linked[dependency]) {
+                        continue;
+                    }
+                    if (state[dependency] == 1) {
+                        System.err.println("Error: composite food cycle; dropping component "
+                                + component.getIdentifier() + " of " + composites.get(i).getFood().getIdentifier());
+                        resolved[i][c] = null;
+                    } else if (state[dependency] == 0) {
+                        state[dependency] = 1;
+                        stack[depth++] = dependency;
+                    }
+                } else {
+                    state[i] = 2;
+                    depth--;
+                    linkComponents(composites.get(i), resolved[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the resolved components of a composite in file order, skipping
+     * components that could not be resolved.
+     *
+     * @param record The composite record
+     * @param components The resolved component of each entry, or null
+     */
+    private static void linkComponents(FoodFileParser.Record record, Food[] components) {
+        double[] servings = record.getComponentServings();
+        List<Food> foods = new ArrayList<>(components.length);
+        List<Double> amounts = new ArrayList<>(components.length);
+        for (int c = 0; c < components.length; c++) {
+            if (components[c] != null) {
+                foods.add(components[c]);
+                amounts.add(servings[c]);
+            }
+        }
+        // One list per composite, instead of a copy for every component added
+        ((CompositeFood) record.getFood()).setComponents(foods, amounts);
+    }
+}
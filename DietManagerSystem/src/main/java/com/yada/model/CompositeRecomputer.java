@@ -0,0 +1,136 @@
+package com.yada.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Bulk re-evaluation of composite foods, e.g. after an import or after a
+ * popular basic food was corrected.
+ *
+ * The composites are grouped by topological level: a level holds the
+ * composites whose composite components are all in earlier levels or
+ * outside the set. All memoized totals are invalidated first; then each
+ * level is evaluated in parallel on the common fork/join pool, so every
+ * composite sums already refreshed components and is evaluated once.
+ */
+final class CompositeRecomputer {
+    /**
+     * Ranges of a level with at most this many composites are evaluated
+     * on one thread.
+     */
+    private static final int SEQUENTIAL_SIZE = 256;
+
+    private CompositeRecomputer() {
+    }
+
+    /**
+     * Recompute the memoized calories and leaf ingredients of composites.
+     *
+     * @param foods The composites to refresh
+     * @param listener Receives the number of composites refreshed after each level, or null
+     * @return The number of composites refreshed; composites on a cycle are skipped
+     */
+    static int recompute(Collection<CompositeFood> foods, ProgressListener listener) {
+        List<CompositeFood> composites = new ArrayList<>(foods);
+        int count = composites.size();
+        Map<CompositeFood, Integer> numbers = new IdentityHashMap<>();
+        for (int i = 0; i < count; i++) {
+            numbers.put(composites.get(i), i);
+        }
+
+        // Dependencies within the set and the reverse edges
+        int[] pendingDependencies = new int[count];
+        List<List<Integer>> dependents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            dependents.add(new ArrayList<>(0));
+        }
+        for (int i = 0; i < count; i++) {
+            CompositeFood composite = composites.get(i);
+            composite.invalidateTotals();
+            for (Food component : composite.getComponents()) {
+                Integer dependency = component instanceof CompositeFood ? numbers.get(component) : null;
+                if (dependency != null) {
+                    pendingDependencies[i]++;
+                    dependents.get(dependency).add(i);
+                }
+            }
+        }
+
+        List<CompositeFood> level = new ArrayList<>();
+        List<Integer> levelNumbers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (pendingDependencies[i] == 0) {
+                levelNumbers.add(i);
+            }
+        }
+
+        int completed = 0;
+        while (!levelNumbers.isEmpty()) {
+            level.clear();
+            for (int i : levelNumbers) {
+                level.add(composites.get(i));
+            }
+            ForkJoinPool.commonPool().invoke(new LevelTask(level, 0, level.size()));
+            completed += level.size();
+            if (listener != null) {
+                listener.progress(completed, count);
+            }
+
+            List<Integer> next = new ArrayList<>();
+            for (int d : levelNumbers) {
+                for (int i : dependents.get(d)) {
+                    if (--pendingDependencies[i] == 0) {
+                        next.add(i);
+                    }
+                }
+            }
+            levelNumbers = next;
+        }
+
+        if (completed < count) {
+            System.err.println("Error: " + (count - completed) + " composite foods are on a dependency cycle and were not recomputed");
+        }
+        return completed;
+    }
+
+    /**
+     * Evaluates a range of one level.
+     */
+    private static class LevelTask extends RecursiveAction {
+        private final List<CompositeFood> level;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructor for LevelTask.
+         *
+         * @param level The composites of the level
+         * @param from The first position to evaluate
+         * @param to The position after the last
+         */
+        LevelTask(List<CompositeFood> level, int from, int to) {
+            this.level = level;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_SIZE) {
+                for (int i = from; i < to; i++) {
+                    CompositeFood composite = level.get(i);
+                    composite.getCaloriesPerServing();
+                    composite.getLeaves();
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new LevelTask(level, from, mid), new LevelTask(level, mid, to));
+        }
+    }
+}
@@ -3,83 +3,362 @@ package com.yada.model;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.time.YearMonth;
+import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Daily log of food consumption.
+ * 
+ * Each user's log is stored in its own directory under database/logs, one
+ * segment file per month plus a write-ahead log of recent changes (see
+ * UserLogFiles), so loading and saving touch only the segments involved.
+ * A small manifest maps usernames to their directories.
+ * 
+ * A user's entries are loaded on first access, and at most
+ * MAX_LOADED_USERS users are kept in memory. The least recently used user
+ * beyond that is dropped once all of their changes are written, so memory
+ * depends on the users active recently rather than on all accounts.
+ * 
+ * The calories of each date are kept as a running total, updated as
+ * entries are added and removed, so reading them does not walk the entries.
+ * Range queries (weekly and monthly totals, averages, dates with entries)
+ * use a CalorieIndex of these totals, rebuilt after the user's log changes.
  */
 public class DailyLog {
-    private static final String LOG_FILE = "database/logs.txt";
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final String LOG_DIRECTORY = "database/logs";
+    private static final String MANIFEST_FILE = "database/logs/manifest.txt";
     
-    private Map<LocalDate, List<LogEntry>> entries;
-    private Map<String, Map<LocalDate, List<LogEntry>>> userEntries; // Logs per user
+    // Single-file storage of earlier versions, migrated on first load
+    private static final String LEGACY_LOG_FILE = "database/logs.txt";
+    private static final String LEGACY_WAL_FILE = "database/logs.wal";
+    
+    /**
+     * Number of users whose entries are kept in memory.
+     */
+    private static final int MAX_LOADED_USERS = 32;
+    
+    private Map<String, Map<LocalDate, List<LogEntry>>> userEntries; // Loaded logs per user, least recently used first
+    
+    // Log directory of each user, as listed in the manifest
+    private final Map<String, String> directories = new LinkedHashMap<>();
+    private final Map<String, UserLogFiles> userFiles = new HashMap<>();
+    
+    // Calories logged on each date, for the loaded users
+    private final Map<String, Map<LocalDate, Double>> userCalories = new HashMap<>();
+    
+    // Range index of each loaded user's totals, built on first use and then kept up to date
+    private final Map<String, CalorieIndex> calorieIndexes = new HashMap<>();
     
     /**
      * Constructor for DailyLog.
      */
     public DailyLog() {
-        userEntries = new HashMap<>();
+        userEntries = new LinkedHashMap<>(16, 0.75f, true);
         load();
     }
     
     /**
-     * Load logs from the log file.
+     * Load the manifest of user logs, migrating the single log file of
+     * earlier versions first. Each user's entries are loaded when first used.
      */
     public void load() {
-        File file = new File(LOG_FILE);
+        migrateLegacyLogs();
+        readManifest();
+    }
+    
+    /**
+     * Load a user's entries ahead of use, e.g. when the user logs in.
+     * 
+     * @param username The username
+     */
+    public void loadUser(String username) {
+        entries(username);
+    }
+    
+    /**
+     * Get the entries of a user, loading them if they are not in memory.
+     * 
+     * @param username The username
+     * @return The user's entries by date
+     */
+    private Map<LocalDate, List<LogEntry>> entries(String username) {
+        Map<LocalDate, List<LogEntry>> loaded = userEntries.get(username);
+        if (loaded != null) {
+            return loaded;
+        }
+        
+        // A user without a log directory has nothing to load
+        loaded = directories.containsKey(username) ? files(username).load() : new HashMap<>();
+        Map<LocalDate, Double> calories = new HashMap<>();
+        for (Map.Entry<LocalDate, List<LogEntry>> dateEntry : loaded.entrySet()) {
+            if (!dateEntry.getValue().isEmpty()) {
+                double total = 0;
+                for (LogEntry entry : dateEntry.getValue()) {
+                    total += entry.getCalories();
+                }
+                calories.put(dateEntry.getKey(), total);
+            }
+        }
+        userEntries.put(username, loaded);
+        userCalories.put(username, calories);
+        evictUsers(username);
+        return loaded;
+    }
+    
+    /**
+     * Drop the least recently used users beyond MAX_LOADED_USERS whose
+     * changes are all written. Users with writes outstanding stay loaded
+     * and are tried again on the next load.
+     * 
+     * @param loadedUser The user just loaded, who is never dropped
+     */
+    private void evictUsers(String loadedUser) {
+        Iterator<String> usernames = userEntries.keySet().iterator();
+        while (userEntries.size() > MAX_LOADED_USERS && usernames.hasNext()) {
+            String username = usernames.next();
+            UserLogFiles files = userFiles.get(username);
+            if (!username.equals(loadedUser) && (files == null || files.isPersisted())) {
+                usernames.remove();
+                userFiles.remove(username);
+                userCalories.remove(username);
+                calorieIndexes.remove(username);
+            }
+        }
+    }
+    
+    /**
+     * Read the manifest of user directories.
+     */
+    private void readManifest() {
+        File file = new File(MANIFEST_FILE);
         if (!file.exists()) {
             return;
         }
-    
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
             String line;
             while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length >= 5) {
-                    String username = parts[0];
-                    LocalDate date = LocalDate.parse(parts[1], DATE_FORMATTER);
-                    String foodId = parts[2];
-                    double servings = Double.parseDouble(parts[3]);
-                    double calories = Double.parseDouble(parts[4]);
-    
-                    LogEntry entry = new LogEntry(new PlaceholderFood(foodId, calories / servings), servings);
-                    addEntry(username, date, entry);
+                int separator = line.lastIndexOf('|');
+                if (separator > 0) {
+                    directories.put(line.substring(0, separator), line.substring(separator + 1));
                 }
             }
         } catch (IOException e) {
-            System.err.println("Error loading logs: " + e.getMessage());
+            System.err.println("Error loading log manifest: " + e.getMessage());
         }
     }
     
     /**
-     * Save logs to the log file.
+     * Write the manifest of user directories, replacing it atomically. This
+     * happens once per new user, before any of the user's files is written.
+     * 
+     * @throws IOException if the manifest cannot be written
      */
-    public void save() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(LOG_FILE))) {
-            for (Map.Entry<String, Map<LocalDate, List<LogEntry>>> userEntry : userEntries.entrySet()) {
-                String username = userEntry.getKey();
-                for (Map.Entry<LocalDate, List<LogEntry>> dateEntry : userEntry.getValue().entrySet()) {
-                    LocalDate date = dateEntry.getKey();
+    private void writeManifest() throws IOException {
+        new File(LOG_DIRECTORY).mkdirs();
+        File temp = new File(MANIFEST_FILE + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> directory : directories.entrySet()) {
+                writer.write(directory.getKey() + "|" + directory.getValue());
+                writer.newLine();
+            }
+        }
+        Files.move(temp.toPath(), new File(MANIFEST_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    /**
+     * Get the log files of a user, adding the user to the manifest if new.
+     * 
+     * @param username The username
+     * @return The user's log files
+     */
+    private UserLogFiles files(String username) {
+        UserLogFiles files = userFiles.get(username);
+        if (files != null) {
+            return files;
+        }
+        
+        if (!directories.containsKey(username)) {
+            directories.put(username, directoryName(username));
+            try {
+                writeManifest();
+            } catch (IOException e) {
+                System.err.println("Error saving log manifest: " + e.getMessage());
+            }
+        }
+        files = new UserLogFiles(new File(LOG_DIRECTORY, directories.get(username)));
+        userFiles.put(username, files);
+        return files;
+    }
+    
+    /**
+     * Choose a directory name for a new user: the username with characters
+     * that are not safe in file names replaced, made unique if needed.
+     * 
+     * @param username The username
+     * @return The directory name
+     */
+    private String directoryName(String username) {
+        String base = username.replaceAll("[^A-Za-z0-9_-]", "_");
+        if (base.isEmpty()) {
+            base = "_";
+        }
+        String name = base;
+        for (int suffix = 2; directories.containsValue(name); suffix++) {
+            name = base + "-" + suffix;
+        }
+        return name;
+    }
+    
+    /**
+     * Move logs of earlier versions, kept in database/logs.txt and its
+     * write-ahead log, into per-user, per-month segments. The old files are
+     * renamed once the segments and manifest are written, so an interrupted
+     * migration runs again from the start.
+     */
+    private void migrateLegacyLogs() {
+        File logFile = new File(LEGACY_LOG_FILE);
+        File walFile = new File(LEGACY_WAL_FILE);
+        if (!logFile.exists() && !walFile.exists()) {
+            return;
+        }
+        
+        Map<String, Map<LocalDate, List<LogEntry>>> legacy = new HashMap<>();
+        int generation = readLegacyFile(logFile, legacy, false, 0);
+        readLegacyFile(walFile, legacy, true, generation);
+        
+        try {
+            readManifest();
+            for (String username : legacy.keySet()) {
+                if (!directories.containsKey(username)) {
+                    directories.put(username, directoryName(username));
+                }
+            }
+            writeManifest();
+        
+            for (Map.Entry<String, Map<LocalDate, List<LogEntry>>> user : legacy.entrySet()) {
+                File directory = new File(LOG_DIRECTORY, directories.get(user.getKey()));
+                directory.mkdirs();
+                Map<YearMonth, List<String>> segments = new HashMap<>();
+                for (Map.Entry<LocalDate, List<LogEntry>> dateEntry : user.getValue().entrySet()) {
+                    List<String> lines = segments.computeIfAbsent(YearMonth.from(dateEntry.getKey()),
+                            k -> new ArrayList<>());
                     for (LogEntry entry : dateEntry.getValue()) {
-                        writer.write(username + "|" + date.format(DATE_FORMATTER) + "|");
-                        writer.write(entry.getFood().getIdentifier() + "|");
-                        writer.write(entry.getServings() + "|");
-                        writer.write(String.valueOf(entry.getCalories()));
-                        writer.newLine();
+                        lines.add(dateEntry.getKey().format(UserLogFiles.DATE_FORMATTER) + "|"
+                                + entry.getFood().getIdentifier() + "|"
+                                + entry.getServings() + "|"
+                                + entry.getCalories());
                     }
                 }
+                for (Map.Entry<YearMonth, List<String>> segment : segments.entrySet()) {
+                    UserLogFiles.writeSegment(new File(directory, segment.getKey() + ".log"), 0, segment.getValue());
+                }
             }
+        
+            if (logFile.exists()) {
+                Files.move(logFile.toPath(), new File(LEGACY_LOG_FILE + ".migrated").toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.deleteIfExists(walFile.toPath());
         } catch (IOException e) {
-            System.err.println("Error saving logs: " + e.getMessage());
+            System.err.println("Error migrating logs: " + e.getMessage());
+        }
+        directories.clear();
+    }
+    
+    /**
+     * Read a log file or write-ahead log of earlier versions.
+     * 
+     * @param file The file
+     * @param logs The entries by user and date to apply it to
+     * @param wal Whether the file is a write-ahead log
+     * @param logGeneration The generation of the log file, for a write-ahead log
+     * @return The generation named in the file's header
+     */
+    private static int readLegacyFile(File file, Map<String, Map<LocalDate, List<LogEntry>>> logs,
+            boolean wal, int logGeneration) {
+        int generation = 0;
+        if (!file.exists()) {
+            return generation;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(UserLogFiles.GENERATION_HEADER)) {
+                    generation = Integer.parseInt(line.substring(UserLogFiles.GENERATION_HEADER.length()));
+                    if (wal && generation < logGeneration) {
+                        // Already compacted into the log file
+                        return generation;
+                    }
+                    continue;
+                }
+                String[] parts = line.split("\\|");
+                try {
+                    if (!wal && parts.length >= 5) {
+                        addLegacy(logs, parts[0], parts[1], parts[2], parts[3], parts[4]);
+                    } else if (wal && parts[0].equals("ADD") && parts.length >= 6) {
+                        addLegacy(logs, parts[1], parts[2], parts[3], parts[4], parts[5]);
+                    } else if (wal && parts[0].equals("REMOVE") && parts.length >= 4) {
+                        List<LogEntry> list = logs.getOrDefault(parts[1], new HashMap<>())
+                                .get(LocalDate.parse(parts[2], UserLogFiles.DATE_FORMATTER));
+                        int index = Integer.parseInt(parts[3]);
+                        if (list != null && index < list.size()) {
+                            list.remove(index);
+                        }
+                    } else if (wal && parts[0].equals("CLEAR") && parts.length >= 3) {
+                        logs.getOrDefault(parts[1], new HashMap<>())
+                                .remove(LocalDate.parse(parts[2], UserLogFiles.DATE_FORMATTER));
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Skipping log record " + line + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error loading logs: " + e.getMessage());
+        }
+        return generation;
+    }
+    
+    /**
+     * Add a logged food read from a log of earlier versions.
+     * 
+     * @param logs The entries by user and date
+     * @param username The username
+     * @param date The date
+     * @param foodId The food identifier
+     * @param servings The number of servings
+     * @param calories The calories of the entry
+     */
+    private static void addLegacy(Map<String, Map<LocalDate, List<LogEntry>>> logs, String username,
+            String date, String foodId, String servings, String calories) {
+        double amount = Double.parseDouble(servings);
+        LogEntry entry = new LogEntry(new PlaceholderFood(foodId, Double.parseDouble(calories) / amount), amount);
+        logs.computeIfAbsent(username, k -> new HashMap<>())
+                .computeIfAbsent(LocalDate.parse(date, UserLogFiles.DATE_FORMATTER), k -> new ArrayList<>())
+                .add(entry);
+    }
+    
+    /**
+     * Make sure all changes reach the disk. Changes are already recorded as
+     * they are made; this starts writing the users' logs that have changes
+     * still waiting.
+     */
+    public void save() {
+        for (UserLogFiles files : userFiles.values()) {
+            files.save();
         }
     }
     
@@ -91,13 +370,19 @@ public class DailyLog {
      * @param entry The log entry
      */
     public void addEntry(String username, LocalDate date, LogEntry entry) {
-        userEntries.putIfAbsent(username, new HashMap<>());
-        userEntries.get(username).putIfAbsent(date, new ArrayList<>());
-        userEntries.get(username).get(date).add(entry);
+        Map<LocalDate, List<LogEntry>> userLog = entries(username);
+        userLog.computeIfAbsent(date, k -> new ArrayList<>()).add(entry);
+        userCalories.get(username).merge(date, entry.getCalories(), Double::sum);
+        CalorieIndex index = calorieIndexes.get(username);
+        if (index != null) {
+            index.add(date, entry.getCalories());
+        }
+        files(username).recordAdd(date, entry, userLog);
     }
     
     /**
-     * Remove an entry from the log for a specific user.
+     * Remove an entry from the log for a specific user. An entry held since
+     * before the user's log was evicted and loaded again is matched by value.
      * 
      * @param username The username
      * @param date The date
@@ -105,12 +390,58 @@ public class DailyLog {
      * @return true if the entry was removed, false otherwise
      */
     public boolean removeEntry(String username, LocalDate date, LogEntry entry) {
-        if (userEntries.containsKey(username) && userEntries.get(username).containsKey(date)) {
-            return userEntries.get(username).get(date).remove(entry);
+        Map<LocalDate, List<LogEntry>> userLog = entries(username);
+        List<LogEntry> list = userLog.get(date);
+        if (list != null) {
+            int index = indexOf(list, entry);
+            if (index >= 0) {
+                list.remove(index);
+                CalorieIndex calorieIndex = calorieIndexes.get(username);
+                if (list.isEmpty()) {
+                    // Drop the total instead of leaving rounding error behind
+                    userCalories.get(username).remove(date);
+                    if (calorieIndex != null) {
+                        calorieIndex.remove(date);
+                    }
+                } else {
+                    userCalories.get(username).merge(date, -entry.getCalories(), Double::sum);
+                    if (calorieIndex != null) {
+                        calorieIndex.add(date, -entry.getCalories());
+                    }
+                }
+                files(username).recordRemove(date, index, userLog);
+                return true;
+            }
         }
         return false;
     }
     
+    /**
+     * Find an entry in a date's list. Loading a user's log again creates new
+     * entry objects, so undo and redo commands may hold an equal entry rather
+     * than the same one; the last entry with the same food, servings and
+     * calories is used then.
+     * 
+     * @param list The date's entries
+     * @param entry The entry to find
+     * @return The position of the entry, or -1 if there is none
+     */
+    private static int indexOf(List<LogEntry> list, LogEntry entry) {
+        int index = list.indexOf(entry);
+        if (index >= 0) {
+            return index;
+        }
+        for (int i = list.size() - 1; i >= 0; i--) {
+            LogEntry candidate = list.get(i);
+            if (candidate.getFood().getIdentifier().equals(entry.getFood().getIdentifier())
+                    && candidate.getServings() == entry.getServings()
+                    && candidate.getCalories() == entry.getCalories()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
     /**
      * Get entries for a specific user and date.
      * 
@@ -119,8 +450,19 @@ public class DailyLog {
      * @return The list of entries for that user and date
      */
     public List<LogEntry> getEntriesForUserAndDate(String username, LocalDate date) {
-        return userEntries.getOrDefault(username, new HashMap<>())
-                        .getOrDefault(date, new ArrayList<>());
+        return entries(username).getOrDefault(date, new ArrayList<>());
+    }
+    
+    /**
+     * Get the calories logged by a user on a date.
+     * 
+     * @param username The username
+     * @param date The date
+     * @return The total calories of the date's entries
+     */
+    public double getCaloriesForUserAndDate(String username, LocalDate date) {
+        entries(username);
+        return userCalories.get(username).getOrDefault(date, 0.0);
     }
     
     /**
@@ -130,25 +472,139 @@ public class DailyLog {
      * @param date The date
      */
     public void clearEntriesForUserAndDate(String username, LocalDate date) {
-        if (userEntries.containsKey(username)) {
-            userEntries.get(username).remove(date);
+        Map<LocalDate, List<LogEntry>> userLog = entries(username);
+        if (userLog.remove(date) != null) {
+            userCalories.get(username).remove(date);
+            CalorieIndex index = calorieIndexes.get(username);
+            if (index != null) {
+                index.remove(date);
+            }
+            files(username).recordClear(date, userLog);
         }
-        save();
     }
     
     /**
-     * Get all dates with log entries.
+     * Get the range index of a user's daily totals, building it on first
+     * use after the user's log is loaded. Changes to the log update it in place.
      * 
-     * @return The list of dates
+     * @param username The username
+     * @return The index
+     */
+    private CalorieIndex calorieIndex(String username) {
+        entries(username);
+        return calorieIndexes.computeIfAbsent(username, k -> new CalorieIndex(userCalories.get(k)));
+    }
+    
+    /**
+     * Get all dates with log entries, for any user. Reads the log of every
+     * user with one; use getDates(String) for a single user.
+     * 
+     * @return The list of dates, in order
      */
     public List<LocalDate> getDates() {
-        return new ArrayList<>(entries.keySet());
+        Set<LocalDate> dates = new TreeSet<>();
+        for (String username : new ArrayList<>(directories.keySet())) {
+            dates.addAll(getDates(username));
+        }
+        return new ArrayList<>(dates);
+    }
+    
+    /**
+     * Get all dates with log entries for a specific user.
+     * 
+     * @param username The username
+     * @return The list of dates, in order
+     */
+    public List<LocalDate> getDates(String username) {
+        return calorieIndex(username).dates(LocalDate.MIN, LocalDate.MAX);
+    }
+    
+    /**
+     * Get the dates with log entries for a user in a date range.
+     * 
+     * @param username The username
+     * @param from The first date, inclusive
+     * @param to The last date, inclusive
+     * @return The list of dates, in order
+     */
+    public List<LocalDate> getDatesForUserBetween(String username, LocalDate from, LocalDate to) {
+        return calorieIndex(username).dates(from, to);
+    }
+    
+    /**
+     * Get the calories logged by a user in a date range.
+     * 
+     * @param username The username
+     * @param from The first date, inclusive
+     * @param to The last date, inclusive
+     * @return The total calories
+     */
+    public double getCaloriesForUserBetween(String username, LocalDate from, LocalDate to) {
+        return calorieIndex(username).total(from, to);
+    }
+    
+    /**
+     * Get the average daily calories of a user over the days ending on a
+     * date. Days without entries are left out rather than counted as zero,
+     * since an unlogged day is not a day without food.
+     * 
+     * @param username The username
+     * @param to The last date, inclusive
+     * @param days The number of days in the window
+     * @return The average calories per logged day, or 0 if none was logged
+     */
+    public double getAverageCaloriesForUser(String username, LocalDate to, int days) {
+        CalorieIndex index = calorieIndex(username);
+        LocalDate from = to.minusDays(days - 1);
+        int logged = index.count(from, to);
+        return logged == 0 ? 0.0 : index.total(from, to) / logged;
+    }
+    
+    /**
+     * Get the calories logged by a user in each week of a date range.
+     * Weeks start on Monday; the first and last weeks are cut to the range.
+     * 
+     * @param username The username
+     * @param from The first date, inclusive
+     * @param to The last date, inclusive
+     * @return The total calories by the first day of each week, in order
+     */
+    public Map<LocalDate, Double> getWeeklyCaloriesForUser(String username, LocalDate from, LocalDate to) {
+        CalorieIndex index = calorieIndex(username);
+        Map<LocalDate, Double> weeks = new LinkedHashMap<>();
+        LocalDate week = from.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        for (; !week.isAfter(to); week = week.plusWeeks(1)) {
+            LocalDate start = week.isBefore(from) ? from : week;
+            LocalDate end = week.plusDays(6).isAfter(to) ? to : week.plusDays(6);
+            weeks.put(week, index.total(start, end));
+        }
+        return weeks;
+    }
+    
+    /**
+     * Get the calories logged by a user in each month of a date range. The
+     * first and last months are cut to the range.
+     * 
+     * @param username The username
+     * @param from The first date, inclusive
+     * @param to The last date, inclusive
+     * @return The total calories by month, in order
+     */
+    public Map<YearMonth, Double> getMonthlyCaloriesForUser(String username, LocalDate from, LocalDate to) {
+        CalorieIndex index = calorieIndex(username);
+        Map<YearMonth, Double> months = new LinkedHashMap<>();
+        for (YearMonth month = YearMonth.from(from); !month.isAfter(YearMonth.from(to)); month = month.plusMonths(1)) {
+            LocalDate start = month.atDay(1).isBefore(from) ? from : month.atDay(1);
+            LocalDate end = month.atEndOfMonth().isAfter(to) ? to : month.atEndOfMonth();
+            months.put(month, index.total(start, end));
+        }
+        return months;
     }
     
     /**
      * Placeholder food for logs when the actual food isn't loaded yet.
      */
-    private static class PlaceholderFood extends Food {
+    static class PlaceholderFood extends Food {
         private double caloriesPerServing;
         
         /**
@@ -172,4 +628,4 @@ public class DailyLog {
             return caloriesPerServing;
         }
     }
-}
\ No newline at end of file
+}
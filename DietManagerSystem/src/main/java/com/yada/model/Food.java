@@ -1,5 +1,8 @@
 package com.yada.model;
 
+import java.text.Normalizer;
+import java.util.Locale;
+
 /**
  * Abstract base class for all food items.
  */
@@ -7,6 +10,10 @@ public abstract class Food {
     private String identifier;
     private String[] keywords;
     
+    // Lowercased, accent-folded forms used by search
+    private String normalizedIdentifier;
+    private String[] normalizedKeywords;
+    
     /**
      * Constructor for Food.
      * 
@@ -16,6 +23,11 @@ public abstract class Food {
     public Food(String identifier, String[] keywords) {
         this.identifier = identifier;
         this.keywords = keywords;
+        this.normalizedIdentifier = normalize(identifier);
+        this.normalizedKeywords = new String[keywords.length];
+        for (int i = 0; i < keywords.length; i++) {
+            normalizedKeywords[i] = normalize(keywords[i]);
+        }
     }
     
     /**
@@ -36,6 +48,59 @@ public abstract class Food {
         return keywords;
     }
     
+    /**
+     * Get the identifier in normalized search form.
+     * 
+     * @return The normalized identifier
+     */
+    String getNormalizedIdentifier() {
+        return normalizedIdentifier;
+    }
+    
+    /**
+     * Get the keywords in normalized search form.
+     * 
+     * @return The normalized keywords
+     */
+    String[] getNormalizedKeywords() {
+        return normalizedKeywords;
+    }
+    
+    /**
+     * Check whether every search term is a substring of the identifier or
+     * of one of the keywords.
+     * 
+     * @param terms The normalized search terms
+     * @return true if all terms match
+     */
+    boolean matches(String[] terms) {
+        for (String term : terms) {
+            if (!matches(term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Check whether a search term is a substring of the identifier or of
+     * one of the keywords.
+     * 
+     * @param term The normalized search term
+     * @return true if the term matches
+     */
+    boolean matches(String term) {
+        if (normalizedIdentifier.contains(term)) {
+            return true;
+        }
+        for (String keyword : normalizedKeywords) {
+            if (keyword.contains(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * Get the calories per serving.
      * 
@@ -43,6 +108,56 @@ public abstract class Food {
      */
     public abstract double getCaloriesPerServing();
     
+    /**
+     * Normalize text for search: lowercase it and strip accents, so that
+     * accented and plain spellings compare equal.
+     * 
+     * @param text The text
+     * @return The normalized text
+     */
+    static String normalize(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); i++) {
+            if (lower.charAt(i) > 0x7F) {
+                return Normalizer.normalize(lower, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+            }
+        }
+        return lower;
+    }
+    
+    /**
+     * Split search text into normalized terms on whitespace.
+     * 
+     * @param text The search text
+     * @return The normalized terms
+     */
+    static String[] tokenize(String text) {
+        String normalized = normalize(text);
+        int count = 0;
+        boolean inTerm = false;
+        for (int i = 0; i < normalized.length(); i++) {
+            boolean space = Character.isWhitespace(normalized.charAt(i));
+            if (!space && !inTerm) {
+                count++;
+            }
+            inTerm = !space;
+        }
+    
+        String[] terms = new String[count];
+        int term = 0;
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean space = i == normalized.length() || Character.isWhitespace(normalized.charAt(i));
+            if (space && start >= 0) {
+                terms[term++] = normalized.substring(start, i);
+                start = -1;
+            } else if (!space && start < 0) {
+                start = i;
+            }
+        }
+        return terms;
+    }
+    
     /**
      * Convert to string representation.
      * 
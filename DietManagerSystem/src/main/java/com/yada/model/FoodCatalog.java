@@ -0,0 +1,833 @@
+package com.yada.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Immutable snapshot of the food catalog with its search indexes.
+ *
+ * A snapshot is an indexed base plus a small overlay of foods added or
+ * removed since the base was built. The overlay is a persistent map keyed
+ * by identifier, with its own trigram postings, so a write derives the
+ * next snapshot by copying a few trie nodes rather than the whole overlay,
+ * and searches look up the overlay's postings instead of scanning it.
+ * Writers never modify a snapshot; they publish the derived one, so readers
+ * can search whichever snapshot they hold without locking.
+ *
+ * Once the overlay grows past COMPACTION_THRESHOLD the owner rebuilds the
+ * base from the whole catalog (see FoodDatabase).
+ *
+ * The base indexes are shared by every snapshot derived from the same
+ * base. At startup they are built on a background thread while queries
+ * scan the base, so the catalog can be served as soon as it is loaded.
+ */
+final class FoodCatalog {
+    /**
+     * Overlay size at which the base should be rebuilt.
+     */
+    static final int COMPACTION_THRESHOLD = 4096;
+
+    // Ranking weights, from strongest to weakest kind of match
+    private static final double EXACT_IDENTIFIER_WEIGHT = 12.0;
+    private static final double IDENTIFIER_PREFIX_WEIGHT = 9.0;
+    private static final double KEYWORD_WEIGHT = 6.0;
+    private static final double SUBSTRING_WEIGHT = 3.0;
+
+    // BM25 term frequency saturation and field count normalization
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+
+    // Runs background index builds, each on its own daemon thread
+    private static final Executor INDEX_BUILDER = task -> {
+        Thread thread = new Thread(task, "food-index-builder");
+        thread.setDaemon(true);
+        thread.start();
+    };
+
+    private final Map<String, Food> base;
+
+    // Shared by every snapshot of the same base; may still be building
+    private final CompletableFuture<BaseIndexes> indexes;
+    private final CompletableFuture<FoodFuzzyIndex> fuzzyIndex;
+
+    // Foods added or replaced after the base was built; a null value marks a removed food
+    private final PersistentMap<String, Food> overrides;
+
+    // Trigram postings of the overlay foods, by identifier
+    private final PersistentMap<Long, PersistentMap<String, Food>> overlayGrams;
+
+    /**
+     * Constructor for FoodCatalog.
+     *
+     * @param base The base foods by identifier
+     * @param indexes The search, prefix and nutrient indexes over the base, possibly still building
+     * @param fuzzyIndex The fuzzy word index over the base, possibly still building
+     * @param overrides The overlay of changes since the base was built
+     * @param overlayGrams The trigram postings of the overlay
+     */
+    private FoodCatalog(Map<String, Food> base, CompletableFuture<BaseIndexes> indexes,
+            CompletableFuture<FoodFuzzyIndex> fuzzyIndex, PersistentMap<String, Food> overrides,
+            PersistentMap<Long, PersistentMap<String, Food>> overlayGrams) {
+        this.base = base;
+        this.indexes = indexes;
+        this.fuzzyIndex = fuzzyIndex;
+        this.overrides = overrides;
+        this.overlayGrams = overlayGrams;
+    }
+
+    /**
+     * Build a snapshot with all foods indexed in the base.
+     *
+     * @param foods The foods, with unique identifiers
+     * @return The snapshot
+     */
+    static FoodCatalog build(Collection<Food> foods) {
+        return build(foods, false);
+    }
+
+    /**
+     * Build a snapshot that can be read at once while its indexes are built
+     * on a background thread, e.g. right after loading the catalog at
+     * startup. Until the indexes are ready, searches, suggestions and
+     * nutrient queries scan the foods, and fuzzy searches fall back to exact
+     * search.
+     *
+     * @param foods The foods, with unique identifiers
+     * @return The snapshot
+     */
+    static FoodCatalog buildInBackground(Collection<Food> foods) {
+        return build(foods, true);
+    }
+
+    /**
+     * Build a snapshot with all foods indexed in the base.
+     *
+     * @param foods The foods, with unique identifiers
+     * @param background Whether to build the indexes on a background thread
+     * @return The snapshot
+     */
+    private static FoodCatalog build(Collection<Food> foods, boolean background) {
+        Map<String, Food> base = new HashMap<>();
+        for (Food food : foods) {
+            base.put(food.getIdentifier(), food);
+        }
+        Map<String, Food> frozen = Collections.unmodifiableMap(base);
+
+        CompletableFuture<BaseIndexes> indexes;
+        CompletableFuture<FoodFuzzyIndex> fuzzyIndex;
+        if (background) {
+            // The exact indexes first, since they serve most queries
+            indexes = CompletableFuture.supplyAsync(() -> new BaseIndexes(frozen.values()), INDEX_BUILDER);
+            fuzzyIndex = indexes.thenApply(built -> new FoodFuzzyIndex(frozen.values()));
+        } else {
+            indexes = CompletableFuture.completedFuture(new BaseIndexes(frozen.values()));
+            fuzzyIndex = CompletableFuture.completedFuture(new FoodFuzzyIndex(frozen.values()));
+        }
+        return new FoodCatalog(frozen, indexes, fuzzyIndex, PersistentMap.empty(), PersistentMap.empty());
+    }
+
+    /**
+     * Derive a snapshot with a food added or replaced.
+     *
+     * @param food The food
+     * @return The new snapshot
+     */
+    FoodCatalog with(Food food) {
+        return withOverride(food.getIdentifier(), food);
+    }
+
+    /**
+     * Derive a snapshot with many foods added or replaced at once.
+     *
+     * @param foods The foods
+     * @return The new snapshot
+     */
+    FoodCatalog withAll(Collection<? extends Food> foods) {
+        FoodCatalog next = this;
+        for (Food food : foods) {
+            next = next.withOverride(food.getIdentifier(), food);
+        }
+        return next;
+    }
+
+    /**
+     * Derive a snapshot with a food removed.
+     *
+     * @param identifier The identifier of the food
+     * @return The new snapshot
+     */
+    FoodCatalog without(String identifier) {
+        return withOverride(identifier, null);
+    }
+
+    /**
+     * Check whether the overlay has grown enough that the base should be
+     * rebuilt.
+     *
+     * @return true if the snapshot should be compacted
+     */
+    boolean needsCompaction() {
+        return overrides.size() >= COMPACTION_THRESHOLD;
+    }
+
+    /**
+     * Rebuild the base from all foods in this snapshot.
+     *
+     * @return A snapshot with the same foods and an empty overlay
+     */
+    FoodCatalog compact() {
+        return build(getAllFoods());
+    }
+
+    /**
+     * Carry over changes made after a compaction started. The compacted
+     * snapshot holds the foods of compactedFrom; every overlay entry of this
+     * snapshot that compactedFrom did not already have is re-applied to it.
+     *
+     * @param compacted The result of compactedFrom.compact()
+     * @param compactedFrom The snapshot the compaction started from
+     * @return The compacted snapshot including later changes
+     */
+    FoodCatalog rebase(FoodCatalog compacted, FoodCatalog compactedFrom) {
+        Map<String, Food> later = new HashMap<>();
+        overrides.forEach((identifier, food) -> {
+            boolean known = compactedFrom.overrides.containsKey(identifier)
+                    && compactedFrom.overrides.get(identifier) == food;
+            if (!known) {
+                later.put(identifier, food);
+            }
+        });
+
+        FoodCatalog rebased = compacted;
+        for (Map.Entry<String, Food> entry : later.entrySet()) {
+            rebased = rebased.withOverride(entry.getKey(), entry.getValue());
+        }
+        return rebased;
+    }
+
+    /**
+     * Get a food by its identifier.
+     *
+     * @param identifier The food identifier
+     * @return The food, or null if not found
+     */
+    Food get(String identifier) {
+        if (overrides.containsKey(identifier)) {
+            return overrides.get(identifier);
+        }
+        return base.get(identifier);
+    }
+
+    /**
+     * Get all foods in the snapshot.
+     *
+     * @return A new list of all foods
+     */
+    List<Food> getAllFoods() {
+        List<Food> all = new ArrayList<>(base.size() + overrides.size());
+        for (Food food : base.values()) {
+            if (isLive(food)) {
+                all.add(food);
+            }
+        }
+        overrides.forEach((identifier, food) -> {
+            if (food != null) {
+                all.add(food);
+            }
+        });
+        return all;
+    }
+
+    /**
+     * Find the foods matching all search terms.
+     *
+     * @param terms The normalized search terms
+     * @param results The list to clear and fill with matching foods
+     */
+    void search(String[] terms, List<Food> results) {
+        BaseIndexes indexed = indexes.getNow(null);
+        if (indexed == null) {
+            results.clear();
+            for (Food food : base.values()) {
+                if (food.matches(terms)) {
+                    results.add(food);
+                }
+            }
+        } else {
+            indexed.search.search(terms, results);
+        }
+        if (overrides.isEmpty()) {
+            return;
+        }
+
+        // Drop base foods that were replaced or removed, in place
+        int kept = 0;
+        for (int i = 0; i < results.size(); i++) {
+            Food food = results.get(i);
+            if (isLive(food)) {
+                results.set(kept++, food);
+            }
+        }
+        results.subList(kept, results.size()).clear();
+
+        overlayCandidates(terms).forEach((identifier, food) -> {
+            if (food != null && food.matches(terms)) {
+                results.add(food);
+            }
+        });
+    }
+
+    /**
+     * Search and return one page of the best matches.
+     * Foods are ranked by how each search word matches (exact identifier,
+     * identifier prefix, exact keyword, then substring), weighted BM25-style
+     * by how rare the word is. Candidates are scored as they stream out of
+     * the trigram postings, and only offset + limit foods are kept while
+     * scoring. When every term is shorter than a trigram, candidates come
+     * from the prefix index instead, so such queries only match foods with a
+     * word starting with the longest term.
+     *
+     * @param terms The normalized search terms
+     * @param offset The number of top matches to skip
+     * @param limit The maximum number of matches to return
+     * @return The matching foods, best first
+     */
+    List<Food> searchRanked(String[] terms, int offset, int limit) {
+        if (offset < 0 || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Until the index is built every term counts as equally common
+        BaseIndexes indexed = indexes.getNow(null);
+        double[] idf = new double[terms.length];
+        int total = base.size();
+        for (int i = 0; i < terms.length; i++) {
+            int frequency = indexed != null ? indexed.search.estimateFrequency(terms[i]) : total;
+            idf[i] = Math.log(1 + (total - frequency + 0.5) / (frequency + 0.5));
+        }
+        double averageFields = indexed != null ? indexed.search.averageFieldCount() : 1.0;
+
+        TopFoods best = new TopFoods(offset + limit);
+        String shortPrefix = longest(terms);
+        Consumer<Food> score = food -> {
+            if (food != null && food.matches(terms)
+                    && (shortPrefix == null || FoodSuggestionIndex.wordKey(food, shortPrefix) != null)) {
+                best.offer(food, score(food, terms, idf, averageFields));
+            }
+        };
+        Consumer<Food> scoreLive = food -> {
+            if (isLive(food)) {
+                score.accept(food);
+            }
+        };
+
+        if (indexed == null) {
+            base.values().forEach(scoreLive);
+        } else if (!indexed.search.forEachCandidate(terms, scoreLive)) {
+            if (shortPrefix != null) {
+                indexed.suggestion.forEachWordMatch(shortPrefix, scoreLive);
+            } else {
+                base.values().forEach(scoreLive);
+            }
+        }
+        overlayCandidates(terms).forEach((identifier, food) -> score.accept(food));
+        return best.page(offset);
+    }
+
+    /**
+     * Search allowing typos. Every term must be within the edit distance of
+     * some word of the food's identifier or keywords. Short terms get a
+     * smaller allowance (one edit per three characters).
+     *
+     * @param terms The normalized search terms
+     * @param maxDistance The maximum edit distance per term
+     * @param limit The maximum number of matches to return
+     * @return The matching foods, closest first
+     */
+    List<Food> fuzzySearch(String[] terms, int maxDistance, int limit) {
+        if (terms.length == 0 || limit <= 0) {
+            return new ArrayList<>();
+        }
+        FoodFuzzyIndex index = fuzzyIndex.getNow(null);
+        if (index == null) {
+            // Still building; exact matches are better than blocking the query
+            return searchRanked(terms, 0, limit);
+        }
+
+        Map<Food, Integer> totals = null;
+        for (String term : terms) {
+            int termDistance = Math.min(maxDistance, term.length() / 3);
+            Map<Food, Integer> matches = new HashMap<>();
+            index.search(term, termDistance, matches);
+            if (!overrides.isEmpty()) {
+                matches.keySet().removeIf(food -> !isLive(food));
+                overrides.forEach((identifier, food) -> {
+                    if (food != null) {
+                        int distance = FoodFuzzyIndex.closestDistance(food, term, termDistance);
+                        if (distance <= termDistance) {
+                            matches.put(food, distance);
+                        }
+                    }
+                });
+            }
+
+            if (totals == null) {
+                totals = matches;
+            } else {
+                totals.keySet().retainAll(matches.keySet());
+                for (Map.Entry<Food, Integer> entry : totals.entrySet()) {
+                    entry.setValue(entry.getValue() + matches.get(entry.getKey()));
+                }
+            }
+            if (totals.isEmpty()) {
+                break;
+            }
+        }
+
+        // Keep the closest matches in a bounded max-heap
+        Comparator<Map.Entry<Food, Integer>> closest = Map.Entry.<Food, Integer>comparingByValue()
+                .thenComparing(e -> e.getKey().getIdentifier());
+        PriorityQueue<Map.Entry<Food, Integer>> best = new PriorityQueue<>(limit, closest.reversed());
+        for (Map.Entry<Food, Integer> entry : totals.entrySet()) {
+            if (best.size() < limit) {
+                best.add(entry);
+            } else if (closest.compare(entry, best.peek()) < 0) {
+                best.poll();
+                best.add(entry);
+            }
+        }
+
+        List<Map.Entry<Food, Integer>> ranked = new ArrayList<>(best);
+        ranked.sort(closest);
+        List<Food> results = new ArrayList<>();
+        for (Map.Entry<Food, Integer> entry : ranked) {
+            results.add(entry.getKey());
+        }
+        return results;
+    }
+
+    /**
+     * Suggest foods for autocomplete. Foods whose identifier starts with the
+     * prefix come first, followed by foods with a word or keyword starting
+     * with it, each group in alphabetical order.
+     *
+     * @param prefix The normalized prefix
+     * @param limit The maximum number of suggestions
+     * @return The suggested foods
+     */
+    List<Food> suggest(String prefix, int limit) {
+        Set<Food> results = new LinkedHashSet<>();
+        if (limit <= 0) {
+            return new ArrayList<>(results);
+        }
+
+        // Overlay foods, and base foods while the index is not built, are merged in unsorted
+        BaseIndexes indexed = indexes.getNow(null);
+        List<Food> unindexed = new ArrayList<>(overrides.size());
+        overrides.forEach((identifier, food) -> {
+            if (food != null) {
+                unindexed.add(food);
+            }
+        });
+        if (indexed == null) {
+            unindexed.addAll(base.values());
+        }
+
+        List<Food> identifierMatches = new ArrayList<>();
+        if (indexed != null) {
+            indexed.suggestion.identifierMatches(prefix, limit, this::isLive, identifierMatches);
+        }
+        List<Food> unsortedIdentifierMatches = new ArrayList<>();
+        for (Food food : unindexed) {
+            if (food.getNormalizedIdentifier().startsWith(prefix) && (indexed != null || isLive(food))) {
+                unsortedIdentifierMatches.add(food);
+            }
+        }
+        addMerged(identifierMatches, unsortedIdentifierMatches, Food::getNormalizedIdentifier, limit, results);
+        if (results.size() >= limit) {
+            return new ArrayList<>(results);
+        }
+
+        List<Food> wordMatches = new ArrayList<>();
+        if (indexed != null) {
+            indexed.suggestion.wordMatches(prefix, limit, food -> isLive(food) && !results.contains(food), wordMatches);
+        }
+        List<Food> unsortedWordMatches = new ArrayList<>();
+        for (Food food : unindexed) {
+            if (!results.contains(food) && FoodSuggestionIndex.wordKey(food, prefix) != null
+                    && (indexed != null || isLive(food))) {
+                unsortedWordMatches.add(food);
+            }
+        }
+        addMerged(wordMatches, unsortedWordMatches, food -> FoodSuggestionIndex.wordKey(food, prefix), limit, results);
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * Find basic foods whose nutrients fall in all of the given ranges.
+     *
+     * @param ranges The nutrient ranges
+     * @return The matching basic foods
+     */
+    List<BasicFood> findByNutrients(NutrientRange... ranges) {
+        BaseIndexes indexed = indexes.getNow(null);
+        List<BasicFood> results;
+        if (indexed == null) {
+            results = new ArrayList<>();
+            for (Food food : base.values()) {
+                if (food instanceof BasicFood && NutrientIndex.matches((BasicFood) food, ranges)) {
+                    results.add((BasicFood) food);
+                }
+            }
+        } else {
+            results = indexed.nutrient.find(ranges);
+        }
+        if (overrides.isEmpty()) {
+            return results;
+        }
+
+        results.removeIf(food -> !isLive(food));
+        overrides.forEach((identifier, food) -> {
+            if (food instanceof BasicFood && NutrientIndex.matches((BasicFood) food, ranges)) {
+                results.add((BasicFood) food);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Check whether a base food is still current, i.e. has not been
+     * replaced or removed in the overlay.
+     *
+     * @param food A food from the base
+     * @return true if the food is current
+     */
+    private boolean isLive(Food food) {
+        return !overrides.containsKey(food.getIdentifier());
+    }
+
+    /**
+     * Derive a snapshot sharing this base with one overlay entry changed,
+     * moving the entry's trigram postings from the old food to the new one.
+     *
+     * @param identifier The food identifier
+     * @param food The new food, or null to mark the food removed
+     * @return The new snapshot
+     */
+    private FoodCatalog withOverride(String identifier, Food food) {
+        PersistentMap<Long, PersistentMap<String, Food>> grams = overlayGrams;
+        Food previous = overrides.get(identifier);
+        if (previous != null) {
+            grams = indexGrams(grams, identifier, previous, false);
+        }
+        if (food != null) {
+            grams = indexGrams(grams, identifier, food, true);
+        }
+        return new FoodCatalog(base, indexes, fuzzyIndex, overrides.put(identifier, food), grams);
+    }
+
+    /**
+     * Get the overlay entries that may match all search terms: those under
+     * the smallest overlay posting of any trigram of the terms, or the
+     * whole overlay if no term is long enough to have a trigram. Entries
+     * may be removal markers and must still be verified.
+     *
+     * @param terms The normalized search terms
+     * @return The candidate overlay entries
+     */
+    private PersistentMap<String, Food> overlayCandidates(String[] terms) {
+        PersistentMap<String, Food> smallest = overrides;
+        for (String term : terms) {
+            for (int i = 0; i + FoodSearchIndex.GRAM_LENGTH <= term.length(); i++) {
+                PersistentMap<String, Food> posting = overlayGrams.getLong(FoodSearchIndex.gramKey(term, i));
+                if (posting == null) {
+                    return PersistentMap.empty();
+                }
+                if (posting.size() < smallest.size()) {
+                    smallest = posting;
+                }
+            }
+        }
+        return smallest;
+    }
+
+    /**
+     * Add a food to or remove it from overlay trigram postings.
+     *
+     * @param grams The postings
+     * @param identifier The food identifier
+     * @param food The food
+     * @param add true to add the food, false to remove it
+     * @return The updated postings
+     */
+    private static PersistentMap<Long, PersistentMap<String, Food>> indexGrams(
+            PersistentMap<Long, PersistentMap<String, Food>> grams, String identifier, Food food, boolean add) {
+        Set<Long> keys = new HashSet<>();
+        addGramKeys(food.getNormalizedIdentifier(), keys);
+        for (String keyword : food.getNormalizedKeywords()) {
+            addGramKeys(keyword, keys);
+        }
+
+        for (Long key : keys) {
+            PersistentMap<String, Food> posting = grams.get(key);
+            if (posting == null) {
+                posting = PersistentMap.empty();
+            }
+            posting = add ? posting.put(identifier, food) : posting.remove(identifier);
+            grams = posting.isEmpty() ? grams.remove(key) : grams.put(key, posting);
+        }
+        return grams;
+    }
+
+    /**
+     * Collect the trigram keys of a text.
+     *
+     * @param text The normalized text
+     * @param keys The set to add keys to
+     */
+    private static void addGramKeys(String text, Set<Long> keys) {
+        for (int i = 0; i + FoodSearchIndex.GRAM_LENGTH <= text.length(); i++) {
+            keys.add(FoodSearchIndex.gramKey(text, i));
+        }
+    }
+
+    /**
+     * Merge a sorted list from the base with unsorted overlay foods by key
+     * and add the result to a set, up to a limit.
+     *
+     * @param sorted Base foods, sorted by key
+     * @param overlay Unsorted foods, from the overlay or an unindexed base
+     * @param key The sort key of a food
+     * @param limit The maximum size of the set
+     * @param results The set to add foods to
+     */
+    private static void addMerged(List<Food> sorted, List<Food> overlay, Function<Food, String> key,
+            int limit, Set<Food> results) {
+        overlay.sort(Comparator.comparing(key));
+        int i = 0;
+        int j = 0;
+        while (results.size() < limit && (i < sorted.size() || j < overlay.size())) {
+            if (j >= overlay.size()
+                    || (i < sorted.size() && key.apply(sorted.get(i)).compareTo(key.apply(overlay.get(j))) <= 0)) {
+                results.add(sorted.get(i++));
+            } else {
+                results.add(overlay.get(j++));
+            }
+        }
+    }
+
+    /**
+     * Get the longest search term if no term is long enough to have a
+     * trigram.
+     *
+     * @param terms The normalized search terms
+     * @return The longest term, or null if some term has a trigram or there
+     *         are no terms
+     */
+    private static String longest(String[] terms) {
+        String longest = null;
+        for (String term : terms) {
+            if (term.length() >= FoodSearchIndex.GRAM_LENGTH) {
+                return null;
+            }
+            if (longest == null || term.length() > longest.length()) {
+                longest = term;
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Score a food that matches all search terms.
+     *
+     * @param food The food
+     * @param terms The normalized search terms
+     * @param idf The inverse document frequency of each term
+     * @param averageFields The average number of fields per food
+     * @return The score, higher is better
+     */
+    private static double score(Food food, String[] terms, double[] idf, double averageFields) {
+        String identifier = food.getNormalizedIdentifier();
+        String[] keywords = food.getNormalizedKeywords();
+        double lengthNorm = 1 - BM25_B + BM25_B * (1 + keywords.length) / averageFields;
+        double score = 0;
+
+        for (int i = 0; i < terms.length; i++) {
+            String term = terms[i];
+            double weight = SUBSTRING_WEIGHT;
+            int frequency = 0;
+
+            if (identifier.contains(term)) {
+                frequency++;
+                if (identifier.equals(term)) {
+                    weight = EXACT_IDENTIFIER_WEIGHT;
+                } else if (identifier.startsWith(term)) {
+                    weight = IDENTIFIER_PREFIX_WEIGHT;
+                }
+            }
+            for (String keyword : keywords) {
+                if (keyword.contains(term)) {
+                    frequency++;
+                    if (keyword.equals(term)) {
+                        weight = Math.max(weight, KEYWORD_WEIGHT);
+                    }
+                }
+            }
+
+            double saturation = frequency * (BM25_K1 + 1) / (frequency + BM25_K1 * lengthNorm);
+            score += idf[i] * (weight + saturation);
+        }
+
+        // A query that spells out the whole identifier beats everything else
+        if (identifier.equals(String.join(" ", terms))) {
+            score += EXACT_IDENTIFIER_WEIGHT * terms.length;
+        }
+        return score;
+    }
+
+    /**
+     * The exact-match indexes over the base, built together.
+     */
+    private static class BaseIndexes {
+        private final FoodSearchIndex search;
+        private final FoodSuggestionIndex suggestion;
+        private final NutrientIndex nutrient;
+
+        /**
+         * Constructor for BaseIndexes.
+         *
+         * @param foods The base foods
+         */
+        public BaseIndexes(Collection<Food> foods) {
+            search = new FoodSearchIndex();
+            for (Food food : foods) {
+                search.add(food);
+            }
+            suggestion = new FoodSuggestionIndex(foods);
+            nutrient = new NutrientIndex(foods);
+        }
+    }
+
+    /**
+     * Bounded min-heap of the best scored foods, kept in parallel arrays so
+     * that scoring a match does not allocate. The root is the worst food
+     * kept; ties in score rank the smaller identifier higher.
+     */
+    private static class TopFoods {
+        private final int capacity;
+        private double[] scores;
+        private Food[] foods;
+        private int size;
+
+        /**
+         * Constructor for TopFoods.
+         *
+         * @param capacity The number of foods to keep
+         */
+        public TopFoods(int capacity) {
+            this.capacity = capacity;
+            int initial = Math.min(capacity, 1024);
+            scores = new double[initial];
+            foods = new Food[initial];
+        }
+
+        /**
+         * Offer a food, keeping it if it is among the best so far.
+         *
+         * @param food The food
+         * @param score The food's score
+         */
+        public void offer(Food food, double score) {
+            if (size < capacity) {
+                if (size == foods.length) {
+                    int grown = (int) Math.min(capacity, size * 2L);
+                    scores = Arrays.copyOf(scores, grown);
+                    foods = Arrays.copyOf(foods, grown);
+                }
+                int i = size++;
+                // Sift up
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!better(scores[parent], foods[parent], score, food)) {
+                        break;
+                    }
+                    scores[i] = scores[parent];
+                    foods[i] = foods[parent];
+                    i = parent;
+                }
+                scores[i] = score;
+                foods[i] = food;
+            } else if (better(score, food, scores[0], foods[0])) {
+                // Replace the root and sift down
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && better(scores[child], foods[child], scores[child + 1], foods[child + 1])) {
+                        child++;
+                    }
+                    if (!better(score, food, scores[child], foods[child])) {
+                        break;
+                    }
+                    scores[i] = scores[child];
+                    foods[i] = foods[child];
+                    i = child;
+                }
+                scores[i] = score;
+                foods[i] = food;
+            }
+        }
+
+        /**
+         * Get the kept foods, best first, after skipping some.
+         *
+         * @param offset The number of best foods to skip
+         * @return The remaining foods
+         */
+        public List<Food> page(int offset) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> better(scores[a], foods[a], scores[b], foods[b]) ? -1
+                    : better(scores[b], foods[b], scores[a], foods[a]) ? 1 : 0);
+            List<Food> results = new ArrayList<>();
+            for (int i = offset; i < size; i++) {
+                results.add(foods[order[i]]);
+            }
+            return results;
+        }
+
+        /**
+         * Check whether one scored food ranks above another.
+         *
+         * @param score The first score
+         * @param food The first food
+         * @param otherScore The second score
+         * @param other The second food
+         * @return true if the first food ranks higher
+         */
+        private static boolean better(double score, Food food, double otherScore, Food other) {
+            if (score != otherScore) {
+                return score > otherScore;
+            }
+            return food.getIdentifier().compareTo(other.getIdentifier()) < 0;
+        }
+    }
+}
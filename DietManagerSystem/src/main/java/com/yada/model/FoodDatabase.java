@@ -1,150 +1,423 @@
 package com.yada.model;
 
-import java.io.BufferedReader;
+import com.yada.util.PersistenceScheduler;
+
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Database of food items.
+ * Reads are served from an immutable FoodCatalog snapshot without locking;
+ * writers are serialized and publish a new snapshot atomically, so the
+ * catalog can be searched while another thread imports foods.
  */
 public class FoodDatabase {
-    private static final String FOODS_FILE = "database/foods.txt";
-    private Map<String, Food> foods;
+    private static final String DATABASE_DIRECTORY = "database";
+    private static final String FOODS_FILE = "foods.txt";
+    private static final String JOURNAL_FILE = "foods.journal";
+    private static final String MERGING_JOURNAL_FILE = "foods.journal.merging";
+    private static final String SNAPSHOT_FILE = "foods.snapshot";
     
     /**
-     * Constructor for FoodDatabase.
+     * Number of journal records after which the journal is merged into the
+     * foods file in the background.
+     */
+    private static final int JOURNAL_MERGE_THRESHOLD = 1000;
+    
+    /**
+     * Largest edit distance accepted by fuzzy search. The fuzzy index stores
+     * deletions up to this distance, and their number grows with its power.
+     */
+    public static final int MAX_FUZZY_DISTANCE = 2;
+    
+    private volatile FoodCatalog catalog;
+    private final Object writeLock = new Object();
+    private final ExecutorService compactor;
+    private boolean compacting; // guarded by writeLock
+    
+    // Append-only journal of foods added since the foods file was written
+    private BufferedWriter journal; // guarded by writeLock
+    private int journalRecords; // guarded by writeLock
+    
+    // Reverse dependencies of composites, built on first use
+    private FoodDependencyGraph dependencies; // guarded by writeLock
+    
+    // Whether nutrients and components of snapshot foods are read on first access
+    private final boolean lazyDetails;
+    
+    // The directory holding the foods file, its journal and its snapshot
+    private final File directory;
+    private final File foodsFile;
+    private final File journalFile;
+    private final File mergingJournalFile;
+    private final File snapshotFile;
+    
+    /**
+     * Constructor for FoodDatabase. Nutrients and composite components are
+     * loaded lazily.
      */
     public FoodDatabase() {
-        foods = new HashMap<>();
+        this(true);
+    }
+    
+    /**
+     * Constructor for FoodDatabase.
+     * 
+     * @param lazyDetails Whether to load only identifiers, keywords and calories
+     *                    at startup and read nutrients and composite components
+     *                    from the snapshot on first access
+     */
+    public FoodDatabase(boolean lazyDetails) {
+        this(new File(DATABASE_DIRECTORY), lazyDetails);
+    }
+    
+    /**
+     * Constructor for a FoodDatabase kept in a given directory rather than
+     * the database directory of the working directory.
+     * 
+     * @param directory The directory of the foods file, its journal and its snapshot
+     * @param lazyDetails Whether to load only identifiers, keywords and calories
+     *                    at startup and read nutrients and composite components
+     *                    from the snapshot on first access
+     */
+    public FoodDatabase(File directory, boolean lazyDetails) {
+        this.lazyDetails = lazyDetails;
+        this.directory = directory;
+        this.foodsFile = new File(directory, FOODS_FILE);
+        this.journalFile = new File(directory, JOURNAL_FILE);
+        this.mergingJournalFile = new File(directory, MERGING_JOURNAL_FILE);
+        this.snapshotFile = new File(directory, SNAPSHOT_FILE);
+        catalog = FoodCatalog.build(new ArrayList<>());
+        compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "food-catalog-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
         load();
     }
     
     /**
-     * Load foods from the foods file.
+     * Load foods from the binary snapshot of the foods file, or from the
+     * foods file itself if the snapshot is out of date, then replay the
+     * journal of changes made since the file was last written.
      */
 private void load() {
-    File file = new File(FOODS_FILE);
+    File file = foodsFile;
     System.out.println("Looking for food file at: " + file.getAbsolutePath()); 
-    if (!file.exists()) {
-        return;
-    }
-    
-    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-        String line;
-        while ((line = reader.readLine()) != null) {
-            String[] parts = line.split("\\|");
-            if (parts.length >= 4) {
-                String type = parts[0];
-                String identifier = parts[1];
-                String[] keywords = parts[2].split(",");
-                
-                if (type.equals("BasicFood")) {
-                    double calories = Double.parseDouble(parts[3]);
-                    BasicFood food = new BasicFood(identifier, keywords, calories);
-                    
-                    // Parse additional nutrients if present (new format)
-                    if (parts.length > 4) {
-                        String[] nutrientPairs = parts[4].split(",");
-                        for (String pair : nutrientPairs) {
-                            String[] kv = pair.split("=");
-                            if (kv.length == 2) {
-                                food.addNutrient(kv[0], Double.parseDouble(kv[1]));
-                            }
-                        }
-                    }
-                    
-                    foods.put(identifier, food);
-                } else if (type.equals("CompositeFood")) {
-                    // Existing composite food handling remains unchanged
-                    CompositeFood food = new CompositeFood(identifier, keywords);
-                    String[] componentParts = parts[3].split(",");
-                    
-                    for (String componentPart : componentParts) {
-                        String[] componentInfo = componentPart.split(":");
-                        if (componentInfo.length == 2) {
-                            String componentIdentifier = componentInfo[0];
-                            double servings = Double.parseDouble(componentInfo[1]);
-                            
-                            Food component = foods.get(componentIdentifier);
-                            if (component != null) {
-                                food.addComponent(component, servings);
-                            }
-                        }
+    
+    Map<String, Food> foods = new HashMap<>();
+    List<FoodFileParser.Record> composites = new ArrayList<>();
+    File snapshot = snapshotFile;
+    List<Food> snapshotFoods = FoodSnapshot.read(snapshot, file, lazyDetails);
+    List<Food> parsed = null;
+    if (snapshotFoods != null) {
+        for (Food food : snapshotFoods) {
+            foods.put(food.getIdentifier(), food);
+        }
+    } else if (file.exists()) {
+        readFoods(file, foods, composites);
+        parsed = new ArrayList<>(foods.values());
+    }
+    
+    // A merging journal is left behind if the app stopped mid-compaction
+    File mergingJournal = mergingJournalFile;
+    int replayed = readFoods(mergingJournal, foods, composites) + readFoods(journalFile, foods, composites);
+    
+    // Composites are linked once all records are read, so components may be defined in any order
+    CompositeLinker.link(composites, foods);
+    if (snapshotFoods != null && replayed > 0) {
+        relinkReplaced(snapshotFoods, foods);
+    }
+    catalog = FoodCatalog.buildInBackground(foods.values());
+    
+    if (parsed != null) {
+        // Missing or stale snapshot; rebuild it from the parsed text
+        List<Food> base = parsed;
+        PersistenceScheduler.getInstance().schedule(foodsFile.getPath(), () -> FoodSnapshot.write(snapshot, file, base));
+    }
+    
+    journalRecords = replayed;
+    if (mergingJournal.exists() || journalRecords >= JOURNAL_MERGE_THRESHOLD) {
+        save();
+    }
+}
+    
+    /**
+     * Read food records from a foods file or journal. Later records replace
+     * or remove earlier ones with the same identifier. Composite foods are returned
+     * unlinked, to be linked by CompositeLinker once all files are read.
+     * 
+     * @param file The file to read
+     * @param foods The foods read so far, by identifier
+     * @param composites The list to add composite records to
+     * @return The number of records read
+     */
+    private int readFoods(File file, Map<String, Food> foods, List<FoodFileParser.Record> composites) {
+        if (!file.exists()) {
+            return 0;
+        }
+        
+        List<FoodFileParser.Record> records;
+        try {
+            records = FoodFileParser.parse(file);
+        } catch (IOException e) {
+            System.err.println("Error loading foods: " + e.getMessage());
+            return 0;
+        }
+        
+        for (FoodFileParser.Record record : records) {
+            if (record.getFood() == null) {
+                foods.remove(record.getRemovedIdentifier());
+                continue;
+            }
+            foods.put(record.getFood().getIdentifier(), record.getFood());
+            if (record.getComponentIdentifiers() != null) {
+                composites.add(record);
+            }
+        }
+        return records.size();
+    }
+    
+    /**
+     * Relink snapshot composites to the journal's newer versions of their
+     * components. Snapshot composites are linked to the snapshot's foods, so
+     * a food updated since the snapshot was written is replaced in them.
+     * 
+     * @param snapshotFoods The foods read from the snapshot
+     * @param foods The final foods by identifier
+     */
+    private void relinkReplaced(List<Food> snapshotFoods, Map<String, Food> foods) {
+        Map<Food, Food> replaced = new IdentityHashMap<>();
+        for (Food food : snapshotFoods) {
+            Food current = foods.get(food.getIdentifier());
+            if (current != null && current != food) {
+                replaced.put(food, current);
+            }
+        }
+        if (replaced.isEmpty()) {
+            return;
+        }
+        
+        List<CompositeFood> composites = new ArrayList<>();
+        for (Food food : foods.values()) {
+            if (food instanceof CompositeFood) {
+                CompositeFood composite = (CompositeFood) food;
+                composites.add(composite);
+                for (Food component : new ArrayList<>(composite.getComponents())) {
+                    Food current = replaced.get(component);
+                    if (current != null) {
+                        composite.replaceComponent(component, current);
                     }
-                    
-                    foods.put(identifier, food);
                 }
             }
         }
-    } catch (IOException e) {
-        System.err.println("Error loading foods: " + e.getMessage());
-    } catch (NumberFormatException e) {
-        System.err.println("Error parsing food data: " + e.getMessage());
+        // Totals recorded in the snapshot may depend on replaced foods at any depth
+        for (CompositeFood composite : composites) {
+            composite.invalidateTotals();
+        }
     }
-}
     
     /**
-     * Save foods to the foods file.
+     * Save foods to the foods file. The whole catalog is written as the new
+     * foods file and the journal emptied on the persistence scheduler, so
+     * this returns without waiting for the disk.
      */
     public void save() {
+        PersistenceScheduler.getInstance().schedule(foodsFile.getPath(), this::mergeJournal);
+    }
+    
+    /**
+     * Append a food record to the journal, starting a background merge into
+     * the foods file once the journal is long enough. Must be called holding
+     * writeLock.
+     * 
+     * @param food The food to record
+     */
+    private void appendToJournal(Food food) {
+        try {
+            writeFood(openJournal(), food);
+            journalAppended();
+        } catch (IOException e) {
+            System.err.println("Error writing food journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Append a removal record to the journal. Must be called holding
+     * writeLock.
+     * 
+     * @param identifier The identifier of the removed food
+     */
+    private void appendRemovalToJournal(String identifier) {
         try {
-            File directory = new File("database");
+            BufferedWriter writer = openJournal();
+            writer.write("RemovedFood|" + identifier);
+            writer.newLine();
+            journalAppended();
+        } catch (IOException e) {
+            System.err.println("Error writing food journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Open the journal writer if it is not open. Must be called holding
+     * writeLock.
+     * 
+     * @return The journal writer
+     * @throws IOException if the journal cannot be opened
+     */
+    private BufferedWriter openJournal() throws IOException {
+        if (journal == null) {
             if (!directory.exists()) {
                 directory.mkdirs();
             }
+            journal = Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        return journal;
+    }
+    
+    /**
+     * Flush a record written to the journal, and start a merge once the
+     * journal is long enough. Must be called holding writeLock.
+     * 
+     * @throws IOException if the journal cannot be flushed
+     */
+    private void journalAppended() throws IOException {
+        journal.flush();
+        journalRecords++;
+        if (journalRecords >= JOURNAL_MERGE_THRESHOLD) {
+            save();
+        }
+    }
+    
+    /**
+     * Seal the current journal and write the current catalog as the new foods
+     * file. Runs on the persistence scheduler, which never runs two writes of
+     * the foods file at once.
+     * 
+     * @throws IOException if the foods file cannot be written
+     */
+    private void mergeJournal() throws IOException {
+        File sealed = mergingJournalFile;
+        FoodCatalog snapshot;
+        synchronized (writeLock) {
+            closeJournal();
             
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(FOODS_FILE))) {
-                for (Food food : foods.values()) {
-                    if (food instanceof BasicFood) {
-                        BasicFood bf = (BasicFood) food;  // Add this line
-                        writer.write("BasicFood|");
-                        writer.write(food.getIdentifier() + "|");
-                        writer.write(String.join(",", food.getKeywords()) + "|");
-                        writer.write(String.valueOf(food.getCaloriesPerServing()));
-                        
-                        Map<String, Double> nutrients = bf.getAllNutrients();
-                        nutrients.remove("calories");
-                        if (!nutrients.isEmpty()) {
-                            writer.write("|");
-                            writer.write(nutrients.entrySet().stream()
-                                .map(e -> e.getKey() + "=" + e.getValue())
-                                .collect(java.util.stream.Collectors.joining(",")));
-                        }
-                        
-                        writer.newLine();
-                    } else if (food instanceof CompositeFood) {
-                        CompositeFood compositeFood = (CompositeFood) food;
-                        writer.write("CompositeFood|");
-                        writer.write(food.getIdentifier() + "|");
-                        writer.write(String.join(",", food.getKeywords()) + "|");
-                        
-                        StringBuilder components = new StringBuilder();
-                        List<Food> componentFoods = compositeFood.getComponents();
-                        List<Double> servings = compositeFood.getServings();
-                        
-                        for (int i = 0; i < componentFoods.size(); i++) {
-                            if (i > 0) {
-                                components.append(",");
-                            }
-                            components.append(componentFoods.get(i).getIdentifier())
-                                      .append(":")
-                                      .append(servings.get(i));
-                        }
-                        
-                        writer.write(components.toString());
-                        writer.newLine();
-                    }
-                }
+            // Records appended from now on go to a fresh journal. If a failed
+            // merge left a sealed journal behind, the current one is kept; its
+            // records are in the snapshot too and replaying them is harmless.
+            if (!sealed.exists() && journalFile.renameTo(sealed)) {
+                journalRecords = 0;
             }
+            snapshot = catalog;
+        }
+        
+        writeFoodsFile(snapshot);
+        sealed.delete();
+    }
+    
+    /**
+     * Close the journal writer if it is open. Must be called holding writeLock.
+     */
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
         } catch (IOException e) {
-            System.err.println("Error saving foods: " + e.getMessage());
+            System.err.println("Error closing food journal: " + e.getMessage());
+        }
+        journal = null;
+    }
+    
+    /**
+     * Write all foods of a snapshot to the foods file, replacing it atomically,
+     * and rebuild the binary snapshot of the new file.
+     * 
+     * @param snapshot The catalog snapshot
+     * @throws IOException if the file cannot be written
+     */
+    private void writeFoodsFile(FoodCatalog snapshot) throws IOException {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        
+        File temp = new File(directory, FOODS_FILE + ".tmp");
+        List<Food> foods = snapshot.getAllFoods();
+        try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            for (Food food : foods) {
+                writeFood(writer, food);
+            }
+        }
+        Files.move(temp.toPath(), foodsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        FoodSnapshot.write(snapshotFile, foodsFile, foods);
+    }
+    
+    /**
+     * Write one food as a line of the foods file format.
+     * 
+     * @param writer The writer
+     * @param food The food
+     * @throws IOException if the line cannot be written
+     */
+    private static void writeFood(BufferedWriter writer, Food food) throws IOException {
+        if (food instanceof BasicFood) {
+            BasicFood bf = (BasicFood) food;  // Add this line
+            writer.write("BasicFood|");
+            writer.write(food.getIdentifier() + "|");
+            writer.write(String.join(",", food.getKeywords()) + "|");
+            writer.write(String.valueOf(food.getCaloriesPerServing()));
+            
+            String nutrients = bf.getAllNutrients().entrySet().stream()
+                .filter(e -> !e.getKey().equals("calories"))
+                .map(e -> e.getKey() + "=" + e.getValue())
+                .collect(java.util.stream.Collectors.joining(","));
+            if (!nutrients.isEmpty()) {
+                writer.write("|");
+                writer.write(nutrients);
+            }
+            
+            writer.newLine();
+        } else if (food instanceof CompositeFood) {
+            CompositeFood compositeFood = (CompositeFood) food;
+            writer.write("CompositeFood|");
+            writer.write(food.getIdentifier() + "|");
+            writer.write(String.join(",", food.getKeywords()) + "|");
+            
+            StringBuilder components = new StringBuilder();
+            List<Food> componentFoods = compositeFood.getComponents();
+            List<Double> servings = compositeFood.getServings();
+            
+            for (int i = 0; i < componentFoods.size(); i++) {
+                if (i > 0) {
+                    components.append(",");
+                }
+                components.append(componentFoods.get(i).getIdentifier())
+                          .append(":")
+                          .append(servings.get(i));
+            }
+            
+            writer.write(components.toString());
+            writer.newLine();
         }
     }
     
@@ -155,13 +428,251 @@ private void load() {
      * @return true if the food was added, false if a food with the same identifier already exists
      */
     public boolean addFood(Food food) {
-        if (foods.containsKey(food.getIdentifier())) {
+        synchronized (writeLock) {
+            if (catalog.get(food.getIdentifier()) != null) {
+                return false;
+            }
+            
+            publish(catalog.with(food));
+            appendToJournal(food);
+            if (dependencies != null) {
+                dependencies.add(food);
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Add many foods in one step, e.g. from an import. The catalog is
+     * published once and the foods file rewritten once, instead of a
+     * snapshot and a journal record per food.
+     * 
+     * @param foods The foods to add
+     * @return The number of foods added; foods whose identifier already
+     *         exists, or repeats an earlier one, are skipped
+     */
+    public int addFoods(Collection<? extends Food> foods) {
+        synchronized (writeLock) {
+            Map<String, Food> added = new LinkedHashMap<>();
+            for (Food food : foods) {
+                if (catalog.get(food.getIdentifier()) == null) {
+                    added.putIfAbsent(food.getIdentifier(), food);
+                }
+            }
+            if (added.isEmpty()) {
+                return 0;
+            }
+            
+            publish(catalog.withAll(added.values()));
+            if (dependencies != null) {
+                for (Food food : added.values()) {
+                    dependencies.add(food);
+                }
+            }
+            save();
+            return added.size();
+        }
+    }
+    
+    /**
+     * Replace a food with a new version with the same identifier. Composites
+     * that use the old version, directly or indirectly, are replaced by
+     * copies linked to the new one, which compute their calories on next
+     * access. The new food and the copies are published in one snapshot, and
+     * the composites of earlier snapshots are never modified.
+     * 
+     * @param food The new version of the food
+     * @return true if the food was updated, false if there is no food with its
+     *         identifier or the new version would use itself, directly or
+     *         through other composites
+     */
+    public boolean updateFood(Food food) {
+        synchronized (writeLock) {
+            String identifier = food.getIdentifier();
+            Food old = catalog.get(identifier);
+            if (old == null || wouldCycle(food)) {
+                return false;
+            }
+            
+            if (food instanceof CompositeFood) {
+                ((CompositeFood) food).invalidateTotals();
+            }
+            
+            // Copy users bottom-up, so each copy links to the copies of its components
+            FoodDependencyGraph graph = dependencies();
+            List<CompositeFood> ancestors = graph.getAncestorsInOrder(identifier);
+            Map<Food, Food> replacements = new IdentityHashMap<>();
+            replacements.put(old, food);
+            List<Food> changed = new ArrayList<>(ancestors.size() + 1);
+            changed.add(food);
+            for (CompositeFood ancestor : ancestors) {
+                CompositeFood copy = ancestor.relinked(replacements);
+                replacements.put(ancestor, copy);
+                changed.add(copy);
+            }
+            
+            publish(catalog.withAll(changed));
+            appendToJournal(food);
+            
+            graph.remove(old);
+            graph.add(food);
+            for (CompositeFood ancestor : ancestors) {
+                graph.remove(ancestor);
+                graph.add(replacements.get(ancestor));
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Remove a food from the database. A food that composites still use
+     * cannot be removed; see getDependentFoods.
+     * 
+     * @param identifier The identifier of the food
+     * @return true if the food was removed, false if it does not exist or is still used
+     */
+    public boolean removeFood(String identifier) {
+        synchronized (writeLock) {
+            Food food = catalog.get(identifier);
+            if (food == null || !dependencies().getDependents(identifier).isEmpty()) {
+                return false;
+            }
+            
+            publish(catalog.without(identifier));
+            appendRemovalToJournal(identifier);
+            dependencies().remove(food);
+            return true;
+        }
+    }
+    
+    /**
+     * Get the composite foods that use a food directly.
+     * 
+     * @param identifier The food identifier
+     * @return The composites
+     */
+    public List<CompositeFood> getDependentFoods(String identifier) {
+        synchronized (writeLock) {
+            return new ArrayList<>(dependencies().getDependents(identifier));
+        }
+    }
+    
+    /**
+     * Check whether a composite would use itself, directly or through other
+     * composites, if it replaced the food with its identifier. Must be called
+     * holding writeLock.
+     * 
+     * @param food The new version of a food
+     * @return true if the food would be on a cycle
+     */
+    private boolean wouldCycle(Food food) {
+        if (!(food instanceof CompositeFood)) {
             return false;
         }
+        Set<String> users = new HashSet<>();
+        users.add(food.getIdentifier());
+        for (CompositeFood ancestor : dependencies().getAncestors(Collections.singletonList(food.getIdentifier()))) {
+            users.add(ancestor.getIdentifier());
+        }
+        for (Food component : ((CompositeFood) food).getComponents()) {
+            if (users.contains(component.getIdentifier())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Notify the database that a food changed in place, e.g. a component was
+     * added to a composite. The memoized calories of the food and of every
+     * composite using it, directly or indirectly, are recomputed on next
+     * access; other composites keep theirs.
+     * 
+     * @param identifier The identifier of the changed food
+     */
+    public void foodChanged(String identifier) {
+        synchronized (writeLock) {
+            Food food = catalog.get(identifier);
+            if (food instanceof CompositeFood) {
+                // Components are only ever added, so this drops all old edges
+                dependencies().remove(food);
+                dependencies().add(food);
+                ((CompositeFood) food).invalidateTotals();
+            }
+            dependencies().invalidateAncestors(identifier);
+        }
+    }
+    
+    /**
+     * Recompute the memoized calories and leaf ingredients of every
+     * composite food, e.g. after a bulk change to the catalog. Composites
+     * are evaluated level by level across all cores, so afterwards every
+     * lookup is served from memory.
+     * 
+     * @param listener Receives the number of composites refreshed, or null
+     * @return The number of composites refreshed
+     */
+    public int recomputeComposites(ProgressListener listener) {
+        List<CompositeFood> composites = new ArrayList<>();
+        for (Food food : catalog.getAllFoods()) {
+            if (food instanceof CompositeFood) {
+                composites.add((CompositeFood) food);
+            }
+        }
+        return CompositeRecomputer.recompute(composites, listener);
+    }
+    
+    /**
+     * Recompute the memoized calories and leaf ingredients of the
+     * composites that use any of the given foods, directly or indirectly.
+     * 
+     * @param identifiers The identifiers of the changed foods
+     * @param listener Receives the number of composites refreshed, or null
+     * @return The number of composites refreshed
+     */
+    public int recomputeDependents(Collection<String> identifiers, ProgressListener listener) {
+        Set<CompositeFood> ancestors;
+        synchronized (writeLock) {
+            ancestors = dependencies().getAncestors(identifiers);
+        }
+        return CompositeRecomputer.recompute(ancestors, listener);
+    }
+    
+    /**
+     * Get the reverse dependency graph, building it on first use so that
+     * loading does not read the components of every composite. Must be
+     * called holding writeLock.
+     * 
+     * @return The graph
+     */
+    private FoodDependencyGraph dependencies() {
+        if (dependencies == null) {
+            dependencies = new FoodDependencyGraph(catalog.getAllFoods());
+        }
+        return dependencies;
+    }
+    
+    /**
+     * Publish a new catalog snapshot and start a background compaction if
+     * its overlay has grown too large. Must be called holding writeLock.
+     * 
+     * @param next The new snapshot
+     */
+    private void publish(FoodCatalog next) {
+        catalog = next;
+        if (!next.needsCompaction() || compacting) {
+            return;
+        }
         
-        foods.put(food.getIdentifier(), food);
-        save();
-        return true;
+        compacting = true;
+        compactor.execute(() -> {
+            FoodCatalog compacted = next.compact();
+            synchronized (writeLock) {
+                compacting = false;
+                // A bulk add during the compaction may need another one
+                publish(catalog.rebase(compacted, next));
+            }
+        });
     }
     
     /**
@@ -171,7 +682,7 @@ private void load() {
      * @return The food, or null if not found
      */
     public Food getFoodByIdentifier(String identifier) {
-        return foods.get(identifier);
+        return catalog.get(identifier);
     }
     
     /**
@@ -180,7 +691,33 @@ private void load() {
      * @return A list of all foods
      */
     public List<Food> getAllFoods() {
-        return new ArrayList<>(foods.values());
+        return catalog.getAllFoods();
+    }
+    
+    /**
+     * Suggest foods for autocomplete. Foods whose identifier starts with the
+     * prefix come first, followed by foods with a word or keyword starting
+     * with it.
+     * 
+     * @param prefix The text typed so far
+     * @param limit The maximum number of suggestions
+     * @return The suggested foods
+     */
+    public List<Food> suggest(String prefix, int limit) {
+        return catalog.suggest(Food.normalize(prefix.trim()), limit);
+    }
+    
+    /**
+     * Find basic foods whose nutrients fall in all of the given ranges,
+     * e.g. NutrientRange.atLeast("protein", 20) and NutrientRange.atMost("fat", 5).
+     * A food without an entry for a nutrient counts as having zero of it.
+     * Nutrients are indexed when the food is added to the database.
+     * 
+     * @param ranges The nutrient ranges
+     * @return The matching basic foods
+     */
+    public List<BasicFood> findFoodsByNutrients(NutrientRange... ranges) {
+        return catalog.findByNutrients(ranges);
     }
     
     /**
@@ -191,40 +728,55 @@ private void load() {
      */
     public List<Food> searchFoods(String keywordsStr) {
         List<Food> results = new ArrayList<>();
-        String[] searchKeywords = keywordsStr.toLowerCase().split("\\s+");
-        
-        for (Food food : foods.values()) {
-            boolean match = true;
-            
-            for (String searchKeyword : searchKeywords) {
-                boolean keywordMatch = false;
-                
-                // Check food identifier
-                if (food.getIdentifier().toLowerCase().contains(searchKeyword)) {
-                    keywordMatch = true;
-                }
-                
-                // Check food keywords
-                if (!keywordMatch) {
-                    for (String foodKeyword : food.getKeywords()) {
-                        if (foodKeyword.toLowerCase().contains(searchKeyword)) {
-                            keywordMatch = true;
-                            break;
-                        }
-                    }
-                }
-                
-                if (!keywordMatch) {
-                    match = false;
-                    break;
-                }
-            }
-            
-            if (match) {
-                results.add(food);
-            }
-        }
-        
+        searchFoods(keywordsStr, results);
         return results;
     }
+    
+    /**
+     * Search for foods by keywords into a caller-owned list, so that
+     * repeated searches (e.g. search-as-you-type) can reuse one buffer.
+     * 
+     * @param keywordsStr The keywords string
+     * @param results The list to clear and fill with matching foods
+     */
+    public void searchFoods(String keywordsStr, List<Food> results) {
+        // Only foods containing every trigram of the search words can match
+        catalog.search(Food.tokenize(keywordsStr), results);
+    }
+    
+    /**
+     * Search for foods by keywords and return one page of the best matches.
+     * Foods are ranked by how each search word matches (exact identifier,
+     * identifier prefix, exact keyword, then substring), weighted BM25-style
+     * by how rare the word is. Only offset + limit foods are kept while
+     * scoring, so broad queries never build the full result list. If every
+     * search word is shorter than three characters, only foods with a word
+     * starting with the longest one are ranked.
+     * 
+     * @param keywordsStr The keywords string
+     * @param offset The number of top matches to skip
+     * @param limit The maximum number of matches to return
+     * @return The matching foods, best first
+     */
+    public List<Food> searchFoods(String keywordsStr, int offset, int limit) {
+        return catalog.searchRanked(Food.tokenize(keywordsStr), offset, limit);
+    }
+    
+    /**
+     * Search for foods allowing typos. Every search word must be within the
+     * edit distance of some word of the food's identifier or keywords.
+     * Short words get a smaller allowance (one edit per three characters)
+     * so that they do not match everything. Results are ordered by total
+     * edit distance. Right after startup, while the fuzzy index is still
+     * being built in the background, this returns exact matches instead.
+     * 
+     * @param keywordsStr The keywords string
+     * @param maxDistance The maximum edit distance per word, capped at MAX_FUZZY_DISTANCE
+     * @param limit The maximum number of matches to return
+     * @return The matching foods, closest first
+     */
+    public List<Food> fuzzySearchFoods(String keywordsStr, int maxDistance, int limit) {
+        int distance = Math.max(0, Math.min(maxDistance, MAX_FUZZY_DISTANCE));
+        return catalog.fuzzySearch(Food.tokenize(keywordsStr), distance, limit);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,184 @@
+package com.yada.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reverse dependency graph of composite foods: for each food identifier,
+ * the composites that use it as a component. When a food changes, only
+ * the composites reachable through these edges have stale memoized
+ * calories, so invalidation touches the affected ancestors and nothing
+ * else.
+ *
+ * Edges are keyed by identifier so that they survive a food being
+ * replaced by a new object with the same identifier. The graph is not
+ * thread-safe; FoodDatabase guards it with its write lock.
+ */
+class FoodDependencyGraph {
+    private final Map<String, List<CompositeFood>> dependents;
+
+    /**
+     * Constructor for FoodDependencyGraph.
+     *
+     * @param foods The foods to start with
+     */
+    public FoodDependencyGraph(Collection<Food> foods) {
+        dependents = new HashMap<>();
+        for (Food food : foods) {
+            add(food);
+        }
+    }
+
+    /**
+     * Add the edges from a composite's components to the composite.
+     *
+     * @param food The food; foods that are not composite have no edges
+     */
+    public void add(Food food) {
+        if (!(food instanceof CompositeFood)) {
+            return;
+        }
+        CompositeFood composite = (CompositeFood) food;
+        for (Food component : composite.getComponents()) {
+            List<CompositeFood> list = dependents.computeIfAbsent(component.getIdentifier(), k -> new ArrayList<>(1));
+            // A component used twice gives one edge; repeats are adjacent while adding
+            if (list.isEmpty() || list.get(list.size() - 1) != composite) {
+                list.add(composite);
+            }
+        }
+    }
+
+    /**
+     * Remove the edges from a composite's components to the composite.
+     *
+     * @param food The food; foods that are not composite have no edges
+     */
+    public void remove(Food food) {
+        if (!(food instanceof CompositeFood)) {
+            return;
+        }
+        for (Food component : ((CompositeFood) food).getComponents()) {
+            List<CompositeFood> list = dependents.get(component.getIdentifier());
+            if (list != null) {
+                list.removeIf(dependent -> dependent == food);
+                if (list.isEmpty()) {
+                    dependents.remove(component.getIdentifier());
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the composites that use a food directly.
+     *
+     * @param identifier The food identifier
+     * @return The composites
+     */
+    public List<CompositeFood> getDependents(String identifier) {
+        return dependents.getOrDefault(identifier, Collections.emptyList());
+    }
+
+    /**
+     * Get every composite that uses one of the given foods, directly or
+     * through other composites.
+     *
+     * @param identifiers The identifiers of the foods
+     * @return The composites
+     */
+    public Set<CompositeFood> getAncestors(Collection<String> identifiers) {
+        Set<CompositeFood> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<CompositeFood> pending = new ArrayDeque<>();
+        for (String identifier : identifiers) {
+            pending.addAll(getDependents(identifier));
+        }
+        while (!pending.isEmpty()) {
+            CompositeFood composite = pending.pop();
+            if (visited.add(composite)) {
+                pending.addAll(getDependents(composite.getIdentifier()));
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Get every composite that uses a food, directly or through other
+     * composites, ordered so that each composite comes after all the
+     * others in the list that it uses.
+     *
+     * @param identifier The identifier of the food
+     * @return The composites, bottom-up
+     */
+    public List<CompositeFood> getAncestorsInOrder(String identifier) {
+        Set<CompositeFood> ancestors = getAncestors(Collections.singletonList(identifier));
+        Set<String> identifiers = new HashSet<>();
+        for (CompositeFood composite : ancestors) {
+            identifiers.add(composite.getIdentifier());
+        }
+
+        // Count the components of each composite that are ancestors too
+        Map<CompositeFood, Integer> waiting = new IdentityHashMap<>();
+        Deque<CompositeFood> ready = new ArrayDeque<>();
+        for (CompositeFood composite : ancestors) {
+            Set<String> used = new HashSet<>();
+            for (Food component : composite.getComponents()) {
+                if (identifiers.contains(component.getIdentifier())) {
+                    used.add(component.getIdentifier());
+                }
+            }
+            if (used.isEmpty()) {
+                ready.add(composite);
+            } else {
+                waiting.put(composite, used.size());
+            }
+        }
+
+        List<CompositeFood> ordered = new ArrayList<>(ancestors.size());
+        while (!ready.isEmpty()) {
+            CompositeFood composite = ready.poll();
+            ordered.add(composite);
+            for (CompositeFood dependent : getDependents(composite.getIdentifier())) {
+                Integer count = waiting.get(dependent);
+                if (count == null) {
+                    continue;
+                }
+                if (count == 1) {
+                    waiting.remove(dependent);
+                    ready.add(dependent);
+                } else {
+                    waiting.put(dependent, count - 1);
+                }
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Invalidate the memoized calories of every composite that uses a
+     * food, directly or through other composites.
+     *
+     * Composites are invalidated bottom-up. A reader that recomputes a
+     * composite meanwhile either sees its components already invalidated,
+     * or memoizes a total that is dropped when the composite's own turn
+     * comes; top-down, a composite could be recomputed from a component not
+     * yet invalidated and keep the stale total for good.
+     *
+     * @param identifier The identifier of the changed food
+     * @return The number of composites invalidated
+     */
+    public int invalidateAncestors(String identifier) {
+        List<CompositeFood> ancestors = getAncestorsInOrder(identifier);
+        for (CompositeFood composite : ancestors) {
+            composite.invalidateTotals();
+        }
+        return ancestors.size();
+    }
+}
@@ -0,0 +1,564 @@
+package com.yada.model;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Single-pass parser for the foods file format:
+ *
+ *   BasicFood|identifier|keyword,...|calories|nutrient=amount,...
+ *   CompositeFood|identifier|keyword,...|component:servings,...
+ *   RemovedFood|identifier
+ *
+ * The file is scanned as bytes, with fields located by their separators and
+ * numbers parsed in place, so there is no regex splitting and no per-line
+ * arrays of substrings. Large files are cut at line boundaries into
+ * chunks that are read and parsed in parallel on the common fork/join
+ * pool, so the whole file is never held in memory at once.
+ *
+ * Composite foods are returned unlinked, with the identifiers of their
+ * components, because a component may be defined in another chunk.
+ * Fields are split like String.split, dropping trailing empty fields, so
+ * files read the same as with the original line parser.
+ */
+final class FoodFileParser {
+    /**
+     * Files up to this size are parsed on the calling thread, and larger
+     * files in chunks of about this size.
+     */
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    // Bytes read at a time while looking for the end of a line
+    private static final int LINE_PROBE_SIZE = 4096;
+
+    private static final byte[] BASIC_FOOD = "BasicFood".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COMPOSITE_FOOD = "CompositeFood".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] REMOVED_FOOD = "RemovedFood".getBytes(StandardCharsets.US_ASCII);
+
+    // Powers of ten that are exact doubles
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private FoodFileParser() {
+    }
+
+    /**
+     * Parse a foods file.
+     *
+     * @param file The file to parse
+     * @return The records, in file order
+     * @throws IOException if the file cannot be read
+     */
+    static List<Record> parse(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= CHUNK_SIZE) {
+                List<Record> records = new ArrayList<>();
+                byte[] data = read(channel, 0, (int) size);
+                parseChunk(data, 0, data.length, records);
+                return records;
+            }
+
+            // The chunks are forked from a root task inside the pool, since
+            // forking from this thread would not run them as pool work
+            try {
+                return ForkJoinPool.commonPool().invoke(new FileTask(channel, size));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Find the position after the end of the line containing a position.
+     *
+     * @param channel The file
+     * @param size The size of the file
+     * @param position The position
+     * @return The position after the next newline, or the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    private static long lineEnd(FileChannel channel, long size, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(LINE_PROBE_SIZE);
+        long start = position - 1;
+        while (start < size) {
+            buffer.clear();
+            int read = channel.read(buffer, start);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            start += read;
+        }
+        return size;
+    }
+
+    /**
+     * Read a range of the file.
+     *
+     * @param channel The file
+     * @param position The start of the range
+     * @param length The length of the range
+     * @return The bytes
+     * @throws IOException if the file cannot be read
+     */
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        byte[] data = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("File shrank while being read");
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Parse the whole lines in a range of the file.
+     *
+     * @param data The file contents
+     * @param from The start of the first line
+     * @param to The end of the last line
+     * @param records The list to add records to
+     */
+    private static void parseChunk(byte[] data, int from, int to, List<Record> records) {
+        // Start and end of the first five fields of the current line
+        int[] starts = new int[5];
+        int[] ends = new int[5];
+
+        int lineStart = from;
+        while (lineStart < to) {
+            int lineEnd = lineStart;
+            while (lineEnd < to && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int next = lineEnd + 1;
+            if (lineEnd > lineStart && data[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+
+            try {
+                Record record = parseLine(data, lineStart, lineEnd, starts, ends);
+                if (record != null) {
+                    records.add(record);
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Error parsing food data: " + e.getMessage());
+            }
+            lineStart = next;
+        }
+    }
+
+    /**
+     * Parse one line.
+     *
+     * @param data The file contents
+     * @param from The start of the line
+     * @param to The end of the line, without the line terminator
+     * @param starts Scratch space for field starts
+     * @param ends Scratch space for field ends
+     * @return The record, or null if the line does not hold a food
+     */
+    private static Record parseLine(byte[] data, int from, int to, int[] starts, int[] ends) {
+        // Count fields as String.split would: trailing empty fields are dropped
+        int fields = 0;
+        int nonEmptyFields = 0;
+        int fieldStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || data[i] == '|') {
+                if (fields < starts.length) {
+                    starts[fields] = fieldStart;
+                    ends[fields] = i;
+                }
+                fields++;
+                if (i > fieldStart) {
+                    nonEmptyFields = fields;
+                }
+                fieldStart = i + 1;
+            }
+        }
+        if (nonEmptyFields == 2 && equals(data, starts[0], ends[0], REMOVED_FOOD)) {
+            return new Record(string(data, starts[1], ends[1]));
+        }
+        if (nonEmptyFields < 4) {
+            return null;
+        }
+
+        boolean basic = equals(data, starts[0], ends[0], BASIC_FOOD);
+        if (!basic && !equals(data, starts[0], ends[0], COMPOSITE_FOOD)) {
+            return null;
+        }
+        String identifier = string(data, starts[1], ends[1]);
+        String[] keywords = splitKeywords(data, starts[2], ends[2]);
+
+        if (basic) {
+            BasicFood food = new BasicFood(identifier, keywords, parseDouble(data, starts[3], ends[3]));
+            if (nonEmptyFields > 4) {
+                int pairStart = starts[4];
+                for (int i = starts[4]; i <= ends[4]; i++) {
+                    if (i == ends[4] || data[i] == ',') {
+                        int separator = pairSeparator(data, pairStart, i, (byte) '=');
+                        if (separator >= 0) {
+                            food.addNutrient(string(data, pairStart, separator),
+                                    parseDouble(data, separator + 1, valueEnd(data, separator + 1, i, (byte) '=')));
+                        }
+                        pairStart = i + 1;
+                    }
+                }
+            }
+            return new Record(food, null, null);
+        }
+
+        List<String> componentIdentifiers = new ArrayList<>();
+        List<Double> servings = new ArrayList<>();
+        int pairStart = starts[3];
+        for (int i = starts[3]; i <= ends[3]; i++) {
+            if (i == ends[3] || data[i] == ',') {
+                int separator = pairSeparator(data, pairStart, i, (byte) ':');
+                if (separator >= 0) {
+                    componentIdentifiers.add(string(data, pairStart, separator));
+                    servings.add(parseDouble(data, separator + 1, valueEnd(data, separator + 1, i, (byte) ':')));
+                }
+                pairStart = i + 1;
+            }
+        }
+
+        double[] componentServings = new double[servings.size()];
+        for (int i = 0; i < componentServings.length; i++) {
+            componentServings[i] = servings.get(i);
+        }
+        return new Record(new CompositeFood(identifier, keywords),
+                componentIdentifiers.toArray(new String[0]), componentServings);
+    }
+
+    /**
+     * Find the separator of a name:value pair. Like String.split, trailing
+     * separators are ignored, and the pair is only valid with exactly one
+     * other separator.
+     *
+     * @param data The file contents
+     * @param from The start of the pair
+     * @param to The end of the pair
+     * @param separator The separator character
+     * @return The position of the separator, or -1 if the pair is not valid
+     */
+    private static int pairSeparator(byte[] data, int from, int to, byte separator) {
+        int end = valueEnd(data, from, to, separator);
+        int found = -1;
+        for (int i = from; i < end; i++) {
+            if (data[i] == separator) {
+                if (found >= 0) {
+                    return -1;
+                }
+                found = i;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Get the end of a range without its trailing separators.
+     *
+     * @param data The file contents
+     * @param from The start of the range
+     * @param to The end of the range
+     * @param separator The separator character
+     * @return The end of the range
+     */
+    private static int valueEnd(byte[] data, int from, int to, byte separator) {
+        while (to > from && data[to - 1] == separator) {
+            to--;
+        }
+        return to;
+    }
+
+    /**
+     * Split the comma separated keywords field like String.split(",").
+     *
+     * @param data The file contents
+     * @param from The start of the field
+     * @param to The end of the field
+     * @return The keywords
+     */
+    private static String[] splitKeywords(byte[] data, int from, int to) {
+        int count = 1;
+        for (int i = from; i < to; i++) {
+            if (data[i] == ',') {
+                count++;
+            }
+        }
+        if (count == 1) {
+            return new String[] {string(data, from, to)};
+        }
+
+        int end = valueEnd(data, from, to, (byte) ',');
+        List<String> keywords = new ArrayList<>(count);
+        int start = from;
+        for (int i = from; i <= end; i++) {
+            if (i == end || data[i] == ',') {
+                keywords.add(string(data, start, i));
+                start = i + 1;
+            }
+        }
+        if (end == from) {
+            keywords.clear();
+        }
+        return keywords.toArray(new String[0]);
+    }
+
+    /**
+     * Parse a decimal number in place. Plain decimals with up to 18 digits
+     * are converted exactly; anything else is handed to Double.parseDouble.
+     *
+     * @param data The file contents
+     * @param from The start of the number
+     * @param to The end of the number
+     * @return The value
+     * @throws NumberFormatException if the text is not a number
+     */
+    static double parseDouble(byte[] data, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean point = false;
+        for (; i < to; i++) {
+            byte c = data[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (point) {
+                    scale++;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                digits = Integer.MAX_VALUE;
+                break;
+            }
+        }
+
+        // Both operands are exact doubles, so the division is correctly rounded
+        if (digits == 0 || digits > 18 || scale >= POWERS_OF_TEN.length || mantissa >= 1L << 53) {
+            return Double.parseDouble(new String(data, from, to - from, StandardCharsets.UTF_8));
+        }
+        double value = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Check whether a range of bytes equals a constant.
+     *
+     * @param data The file contents
+     * @param from The start of the range
+     * @param to The end of the range
+     * @param expected The expected bytes
+     * @return true if they are equal
+     */
+    private static boolean equals(byte[] data, int from, int to, byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (data[from + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode a range of bytes.
+     *
+     * @param data The file contents
+     * @param from The start of the range
+     * @param to The end of the range
+     * @return The string
+     */
+    private static String string(byte[] data, int from, int to) {
+        return new String(data, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One food read from the file. Composite foods come with the
+     * identifiers and servings of their components, still to be linked.
+     * A removal record has no food, only the identifier of the removed one.
+     */
+    static class Record {
+        private final Food food;
+        private final String[] componentIdentifiers;
+        private final double[] componentServings;
+        private final String removedIdentifier;
+
+        /**
+         * Constructor for Record.
+         *
+         * @param food The food
+         * @param componentIdentifiers The component identifiers, or null for a basic food
+         * @param componentServings The servings of each component, or null for a basic food
+         */
+        Record(Food food, String[] componentIdentifiers, double[] componentServings) {
+            this.food = food;
+            this.componentIdentifiers = componentIdentifiers;
+            this.componentServings = componentServings;
+            this.removedIdentifier = null;
+        }
+
+        /**
+         * Constructor for a removal record.
+         *
+         * @param removedIdentifier The identifier of the removed food
+         */
+        Record(String removedIdentifier) {
+            this.food = null;
+            this.componentIdentifiers = null;
+            this.componentServings = null;
+            this.removedIdentifier = removedIdentifier;
+        }
+
+        /**
+         * Get the food.
+         *
+         * @return The food, unlinked if it is composite, or null for a removal
+         */
+        Food getFood() {
+            return food;
+        }
+
+        /**
+         * Get the identifiers of the components.
+         *
+         * @return The identifiers, or null for a basic food
+         */
+        String[] getComponentIdentifiers() {
+            return componentIdentifiers;
+        }
+
+        /**
+         * Get the servings of each component.
+         *
+         * @return The servings, or null for a basic food
+         */
+        double[] getComponentServings() {
+            return componentServings;
+        }
+
+        /**
+         * Get the identifier of the removed food.
+         *
+         * @return The identifier, or null if this record is not a removal
+         */
+        String getRemovedIdentifier() {
+            return removedIdentifier;
+        }
+    }
+
+    /**
+     * Cuts a file into chunks of whole lines, parses them in parallel and
+     * joins their records in file order.
+     */
+    private static class FileTask extends RecursiveTask<List<Record>> {
+        private final FileChannel channel;
+        private final long size;
+
+        /**
+         * Constructor for FileTask.
+         *
+         * @param channel The file
+         * @param size The size of the file
+         */
+        FileTask(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        @Override
+        protected List<Record> compute() {
+            // Only the chunks being parsed are held in memory, so the file
+            // may be larger than the largest array
+            List<ChunkTask> tasks = new ArrayList<>();
+            try {
+                long from = 0;
+                while (from < size) {
+                    long to = lineEnd(channel, size, Math.min(size, from + CHUNK_SIZE));
+                    if (to - from > Integer.MAX_VALUE - 8) {
+                        throw new IOException("Line too long at byte " + from);
+                    }
+                    tasks.add(new ChunkTask(channel, from, (int) (to - from)));
+                    from = to;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(tasks);
+
+            int total = 0;
+            for (ChunkTask task : tasks) {
+                total += task.join().size();
+            }
+            List<Record> records = new ArrayList<>(total);
+            for (ChunkTask task : tasks) {
+                records.addAll(task.join());
+            }
+            return records;
+        }
+    }
+
+    /**
+     * Reads and parses one chunk of whole lines.
+     */
+    private static class ChunkTask extends RecursiveTask<List<Record>> {
+        private final FileChannel channel;
+        private final long from;
+        private final int length;
+
+        /**
+         * Constructor for ChunkTask.
+         *
+         * @param channel The file
+         * @param from The start of the first line
+         * @param length The length of the chunk, ending with its last line
+         */
+        ChunkTask(FileChannel channel, long from, int length) {
+            this.channel = channel;
+            this.from = from;
+            this.length = length;
+        }
+
+        @Override
+        protected List<Record> compute() {
+            byte[] data;
+            try {
+                data = read(channel, from, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            List<Record> records = new ArrayList<>();
+            parseChunk(data, 0, data.length, records);
+            return records;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.yada.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Deletion-neighborhood index over the words of food identifiers and
+ * keywords, used for typo-tolerant search. Two words are within edit
+ * distance d only if deleting at most d characters from each gives the
+ * same string. The index holds every such deletion of every distinct word
+ * up to MAX_DISTANCE, so a query looks up its own deletions (a few dozen
+ * for a typical word) and computes the exact distance for the words found
+ * there only, however large the vocabulary.
+ *
+ * Deletions are kept as 32-bit hashes packed with the word id into one
+ * sorted long array, so a lookup is a binary search. A hash collision only
+ * adds a candidate that the exact distance then rejects.
+ *
+ * The whole index, deletion array included, is built by the constructor,
+ * which FoodCatalog runs off the query path. After that the index is only
+ * read.
+ */
+class FoodFuzzyIndex {
+    /**
+     * Largest edit distance the index can answer.
+     */
+    private static final int MAX_DISTANCE = FoodDatabase.MAX_FUZZY_DISTANCE;
+
+    // Per-thread rows for the edit distance computation
+    private static final ThreadLocal<int[][]> ROWS = ThreadLocal.withInitial(() -> new int[2][32]);
+
+    // Distinct words and the foods that contain each, by word id
+    private final List<String> words = new ArrayList<>();
+    private final List<List<Food>> wordFoods = new ArrayList<>();
+
+    // Sorted (deletion hash << 32 | word id) keys
+    private final long[] keys;
+
+    /**
+     * Constructor for FoodFuzzyIndex.
+     *
+     * @param foods The foods to index
+     */
+    public FoodFuzzyIndex(Collection<Food> foods) {
+        Map<String, Integer> wordIds = new HashMap<>();
+        for (Food food : foods) {
+            for (String word : Food.tokenize(food.getIdentifier())) {
+                insert(word, food, wordIds);
+            }
+            for (String keyword : food.getNormalizedKeywords()) {
+                insert(keyword, food, wordIds);
+            }
+        }
+        keys = buildKeys();
+    }
+
+    /**
+     * Find foods with a word within an edit distance of a term.
+     *
+     * @param term The normalized term
+     * @param maxDistance The maximum edit distance, at most MAX_DISTANCE
+     * @param matches Map to fill with each matching food and its smallest distance
+     */
+    public void search(String term, int maxDistance, Map<Food, Integer> matches) {
+        long[] index = keys;
+        int bound = Math.min(maxDistance, MAX_DISTANCE);
+        int[] hashes = new int[deletionCount(term.length(), bound)];
+        int count = deletionHashes(term, bound, hashes);
+        Arrays.sort(hashes, 0, count);
+
+        Set<Integer> checked = new HashSet<>();
+        for (int h = 0; h < count; h++) {
+            if (h > 0 && hashes[h] == hashes[h - 1]) {
+                continue;
+            }
+            for (int i = lowerBound(index, (long) hashes[h] << 32);
+                    i < index.length && (int) (index[i] >> 32) == hashes[h]; i++) {
+                int id = (int) index[i];
+                if (!checked.add(id)) {
+                    continue;
+                }
+                int distance = distance(term, words.get(id), bound);
+                if (distance <= bound) {
+                    for (Food food : wordFoods.get(id)) {
+                        matches.merge(food, distance, Math::min);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Insert a word for a food.
+     *
+     * @param word The normalized word
+     * @param food The food
+     * @param wordIds The ids of the words inserted so far
+     */
+    private void insert(String word, Food food, Map<String, Integer> wordIds) {
+        if (word.isEmpty()) {
+            return;
+        }
+        Integer id = wordIds.get(word);
+        if (id == null) {
+            id = words.size();
+            wordIds.put(word, id);
+            words.add(word);
+            wordFoods.add(new ArrayList<>(1));
+        }
+        // A food's words are added together, so a repeat can only be the last element
+        List<Food> foods = wordFoods.get(id);
+        if (foods.isEmpty() || foods.get(foods.size() - 1) != food) {
+            foods.add(food);
+        }
+    }
+
+    /**
+     * Build the deletion keys of all words.
+     *
+     * @return The sorted keys
+     */
+    private long[] buildKeys() {
+        long[] built = new long[Math.max(16, words.size() * 16)];
+        int size = 0;
+        int[] hashes = new int[0];
+        for (int id = 0; id < words.size(); id++) {
+            String word = words.get(id);
+            int needed = deletionCount(word.length(), MAX_DISTANCE);
+            if (hashes.length < needed) {
+                hashes = new int[needed];
+            }
+            int count = deletionHashes(word, MAX_DISTANCE, hashes);
+            if (built.length - size < count) {
+                built = Arrays.copyOf(built, Math.max(built.length * 2, size + count));
+            }
+            for (int h = 0; h < count; h++) {
+                built[size++] = (long) hashes[h] << 32 | id;
+            }
+        }
+
+        // Deleting either of two equal letters gives the same key; keep one
+        Arrays.sort(built, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || built[i] != built[unique - 1]) {
+                built[unique++] = built[i];
+            }
+        }
+        return Arrays.copyOf(built, unique);
+    }
+
+    /**
+     * Get the number of ways to delete up to a number of characters from a
+     * word, counting deletions of equal letters separately.
+     *
+     * @param length The length of the word
+     * @param distance The maximum number of deletions
+     * @return The number of deletions, including the word itself
+     */
+    private static int deletionCount(int length, int distance) {
+        int count = 1;
+        if (distance >= 1) {
+            count += length;
+        }
+        if (distance >= 2) {
+            count += length * (length - 1) / 2;
+        }
+        return count;
+    }
+
+    /**
+     * Hash every string obtained by deleting up to a number of characters
+     * from a word, without building the strings.
+     *
+     * @param word The word
+     * @param distance The maximum number of deletions, at most 2
+     * @param hashes The array to fill, at least deletionCount long
+     * @return The number of hashes written
+     */
+    private static int deletionHashes(String word, int distance, int[] hashes) {
+        int count = 0;
+        hashes[count++] = hashWithout(word, -1, -1);
+        for (int i = 0; i < word.length() && distance >= 1; i++) {
+            hashes[count++] = hashWithout(word, i, -1);
+            for (int j = i + 1; j < word.length() && distance >= 2; j++) {
+                hashes[count++] = hashWithout(word, i, j);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Compute the String.hashCode of a word with up to two characters left out.
+     *
+     * @param word The word
+     * @param skip The position of a character to leave out, or -1
+     * @param skipToo The position of another character to leave out, or -1
+     * @return The hash
+     */
+    private static int hashWithout(String word, int skip, int skipToo) {
+        int hash = 0;
+        for (int k = 0; k < word.length(); k++) {
+            if (k != skip && k != skipToo) {
+                hash = 31 * hash + word.charAt(k);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Find the first position of a sorted array not below a key.
+     *
+     * @param keys The sorted keys
+     * @param key The key
+     * @return The position, or the array length if all keys are below it
+     */
+    private static int lowerBound(long[] keys, long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the smallest edit distance between a term and the words of a
+     * food's identifier and keywords, for overlay foods the index does not
+     * cover.
+     *
+     * @param food The food
+     * @param term The normalized term
+     * @param maxDistance The maximum edit distance of interest
+     * @return The distance, or some value above maxDistance if no word is that close
+     */
+    static int closestDistance(Food food, String term, int maxDistance) {
+        int closest = maxDistance + 1;
+        for (String word : Food.tokenize(food.getIdentifier())) {
+            closest = Math.min(closest, distance(term, word, maxDistance));
+        }
+        for (String keyword : food.getNormalizedKeywords()) {
+            if (!keyword.isEmpty()) {
+                closest = Math.min(closest, distance(term, keyword, maxDistance));
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Compute the Levenshtein distance between two words, giving up once
+     * it is known to exceed a bound.
+     *
+     * @param a The first word
+     * @param b The second word
+     * @param bound The largest distance that must be exact
+     * @return The edit distance, or some value above bound if it is larger
+     */
+    private static int distance(String a, String b, int bound) {
+        if (Math.abs(a.length() - b.length()) > bound) {
+            return bound + 1;
+        }
+        int[][] buffers = ROWS.get();
+        if (buffers[0].length <= b.length()) {
+            buffers[0] = new int[b.length() + 1];
+            buffers[1] = new int[b.length() + 1];
+        }
+        int[] previous = buffers[0];
+        int[] current = buffers[1];
+
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > bound) {
+                return bound + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
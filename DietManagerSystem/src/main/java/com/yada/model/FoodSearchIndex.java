@@ -0,0 +1,362 @@
+package com.yada.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Trigram inverted index over food identifiers and keywords.
+ * Every food gets a dense document id, and each trigram maps to the sorted
+ * list of document ids whose identifier or keywords contain it. A search
+ * term of at least three characters can then only match foods in the
+ * intersection of its trigram posting lists.
+ *
+ * The index is filled once by FoodCatalog and only read afterwards, so it
+ * can be shared by any number of searching threads.
+ */
+class FoodSearchIndex {
+    static final int GRAM_LENGTH = 3;
+    private static final Comparator<PostingList> BY_SIZE = (a, b) -> Integer.compare(a.size, b.size);
+
+    private List<Food> documents;
+    private GramTable postings;
+    private long fieldCount;
+
+    // Per-thread buffers so that steady-state searches do not allocate
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Constructor for FoodSearchIndex.
+     */
+    public FoodSearchIndex() {
+        documents = new ArrayList<>();
+        postings = new GramTable();
+    }
+
+    /**
+     * Add a food to the index.
+     *
+     * @param food The food to index
+     */
+    public void add(Food food) {
+        int id = documents.size();
+        documents.add(food);
+
+        addGrams(food.getNormalizedIdentifier(), id);
+        for (String keyword : food.getNormalizedKeywords()) {
+            addGrams(keyword, id);
+        }
+        fieldCount += 1 + food.getKeywords().length;
+    }
+
+    /**
+     * Find the foods matching all search terms.
+     *
+     * @param terms The normalized search terms
+     * @param results The list to fill with matching foods
+     */
+    public void search(String[] terms, List<Food> results) {
+        results.clear();
+        Scratch buffers = scratch.get();
+        int count = intersect(terms, buffers);
+
+        // No term is long enough to narrow the search
+        if (count < 0) {
+            for (int i = 0; i < documents.size(); i++) {
+                Food food = documents.get(i);
+                if (food.matches(terms)) {
+                    results.add(food);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            Food food = documents.get(buffers.ids[i]);
+            if (food.matches(terms)) {
+                results.add(food);
+            }
+        }
+    }
+
+    /**
+     * Pass the candidate foods for a set of search terms to an action as
+     * they come out of the posting list intersection, without collecting
+     * them. Every food that matches all terms is passed, but not every
+     * passed food matches; the action must still verify candidates.
+     *
+     * @param terms The normalized search terms
+     * @param action The action to call for each candidate
+     * @return false if no term has a trigram, in which case the index cannot
+     *         narrow the search and no candidate was passed
+     */
+    public boolean forEachCandidate(String[] terms, Consumer<Food> action) {
+        Scratch buffers = scratch.get();
+        int count = intersect(terms, buffers);
+        if (count < 0) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            action.accept(documents.get(buffers.ids[i]));
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of indexed foods.
+     *
+     * @return The number of foods
+     */
+    public int size() {
+        return documents.size();
+    }
+
+    /**
+     * Get the average number of fields (identifier plus keywords) per food.
+     *
+     * @return The average field count
+     */
+    public double averageFieldCount() {
+        return documents.isEmpty() ? 1.0 : (double) fieldCount / documents.size();
+    }
+
+    /**
+     * Estimate how many foods contain a term. This is the length of the
+     * shortest posting list among the term's trigrams, which is an upper
+     * bound; terms shorter than a trigram are assumed to occur everywhere.
+     *
+     * @param term The normalized term
+     * @return The estimated document frequency
+     */
+    public int estimateFrequency(String term) {
+        int frequency = size();
+        for (int i = 0; i + GRAM_LENGTH <= term.length(); i++) {
+            PostingList list = postings.get(gramKey(term, i));
+            if (list == null) {
+                return 0;
+            }
+            frequency = Math.min(frequency, list.size);
+        }
+        return frequency;
+    }
+
+    /**
+     * Intersect the posting lists of all trigrams of the search terms into
+     * the thread's id buffer.
+     *
+     * @param terms The normalized search terms
+     * @param buffers The thread's buffers
+     * @return The number of ids in buffers.ids, or -1 if no term has a trigram
+     */
+    private int intersect(String[] terms, Scratch buffers) {
+        int listCount = 0;
+        for (String term : terms) {
+            for (int i = 0; i + GRAM_LENGTH <= term.length(); i++) {
+                PostingList list = postings.get(gramKey(term, i));
+                if (list == null) {
+                    Arrays.fill(buffers.lists, 0, listCount, null);
+                    return 0;
+                }
+                buffers.lists = ensureCapacity(buffers.lists, listCount + 1);
+                buffers.lists[listCount++] = list;
+            }
+        }
+        if (listCount == 0) {
+            return -1;
+        }
+
+        // Intersect starting from the shortest list
+        PostingList[] lists = buffers.lists;
+        Arrays.sort(lists, 0, listCount, BY_SIZE);
+        if (buffers.ids.length < lists[0].size) {
+            buffers.ids = new int[Math.max(lists[0].size, buffers.ids.length * 2)];
+        }
+        int[] ids = buffers.ids;
+        System.arraycopy(lists[0].ids, 0, ids, 0, lists[0].size);
+        int count = lists[0].size;
+        for (int i = 1; i < listCount && count > 0; i++) {
+            count = intersect(ids, count, lists[i]);
+        }
+        Arrays.fill(lists, 0, listCount, null);
+        return count;
+    }
+
+    /**
+     * Index all trigrams of a text for a document.
+     *
+     * @param text The normalized text
+     * @param id The document id
+     */
+    private void addGrams(String text, int id) {
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            postings.getOrCreate(gramKey(text, i)).add(id);
+        }
+    }
+
+    /**
+     * Pack the trigram starting at an offset into a single key.
+     *
+     * @param text The text
+     * @param offset The offset of the trigram
+     * @return The trigram key
+     */
+    static long gramKey(String text, int offset) {
+        return ((long) text.charAt(offset) << 32)
+                | ((long) text.charAt(offset + 1) << 16)
+                | text.charAt(offset + 2);
+    }
+
+    /**
+     * Intersect a sorted id buffer with a posting list in place.
+     *
+     * @param ids The sorted id buffer
+     * @param count The number of valid ids in the buffer
+     * @param list The posting list
+     * @return The number of ids left in the buffer
+     */
+    private static int intersect(int[] ids, int count, PostingList list) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < list.size; i++) {
+            while (j < list.size && list.ids[j] < ids[i]) {
+                j++;
+            }
+            if (j < list.size && list.ids[j] == ids[i]) {
+                ids[kept++] = ids[i];
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Grow an array of posting lists if needed.
+     *
+     * @param lists The array
+     * @param capacity The required capacity
+     * @return The array, or a larger copy of it
+     */
+    private static PostingList[] ensureCapacity(PostingList[] lists, int capacity) {
+        return lists.length >= capacity ? lists : Arrays.copyOf(lists, Math.max(capacity, lists.length * 2));
+    }
+
+    /**
+     * Sorted, duplicate-free list of document ids for one trigram.
+     */
+    private static class PostingList {
+        private int[] ids = new int[4];
+        private int size;
+
+        /**
+         * Append a document id. Ids arrive in increasing order, so a repeat
+         * can only be the last element.
+         *
+         * @param id The document id
+         */
+        public void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * Open-addressing hash table from packed trigram keys to posting lists,
+     * so that lookups do not box the key.
+     */
+    private static class GramTable {
+        private long[] keys = new long[1024];
+        private PostingList[] values = new PostingList[1024];
+        private int size;
+
+        /**
+         * Get the posting list for a key.
+         *
+         * @param key The trigram key
+         * @return The posting list, or null if absent
+         */
+        public PostingList get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Get the posting list for a key, creating it if absent.
+         *
+         * @param key The trigram key
+         * @return The posting list
+         */
+        public PostingList getOrCreate(long key) {
+            PostingList list = get(key);
+            if (list != null) {
+                return list;
+            }
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            list = new PostingList();
+            insert(key, list);
+            size++;
+            return list;
+        }
+
+        /**
+         * Insert a key known to be absent.
+         *
+         * @param key The trigram key
+         * @param list The posting list
+         */
+        private void insert(long key, PostingList list) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = list;
+        }
+
+        /**
+         * Double the table size and rehash.
+         */
+        private void resize() {
+            long[] oldKeys = keys;
+            PostingList[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new PostingList[oldValues.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    insert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        /**
+         * Spread the bits of a key.
+         *
+         * @param key The trigram key
+         * @return The hash
+         */
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /**
+     * Reusable buffers for one searching thread.
+     */
+    private static class Scratch {
+        private int[] ids = new int[64];
+        private PostingList[] lists = new PostingList[8];
+    }
+}
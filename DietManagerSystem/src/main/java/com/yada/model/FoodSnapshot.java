@@ -0,0 +1,500 @@
+package com.yada.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of the foods file, read at startup instead of parsing the
+ * text. The snapshot is a set of columns read through a memory mapping:
+ *
+ *   header      magic, version, length and modification time of foods.txt
+ *   strings     offsets into one UTF-8 blob; identifiers, keywords and
+ *               nutrient names are each stored once
+ *   foods       type, identifier and keyword range per food
+ *   nutrients   calories per food, then nutrient offsets, names and amounts
+ *   components  component offsets, food positions and servings
+ *
+ * The offset columns let LazyFoodDetails read one food's nutrients or
+ * components without decoding the rest, so in lazy mode only identifiers,
+ * keywords and calories are read at startup.
+ *
+ * foods.txt stays the import and export format. A snapshot whose recorded
+ * length or modification time differs from the text file is stale and is
+ * ignored, so an edited foods.txt is re-parsed and the snapshot rebuilt.
+ *
+ * A mapped file cannot be replaced or deleted on every platform, so each
+ * snapshot is written to a new generation file next to the snapshot path
+ * (foods.snapshot.1, foods.snapshot.2, ...), and the snapshot path itself
+ * is a small pointer file naming the current generation. Only the pointer
+ * is replaced; older generations are deleted once they are no longer
+ * current, and any that are still mapped are deleted by a later write.
+ */
+final class FoodSnapshot {
+    private static final int MAGIC = 0x59414441; // "YADA"
+    private static final int VERSION = 2;
+
+    private static final byte BASIC_FOOD = 0;
+    private static final byte COMPOSITE_FOOD = 1;
+
+    // Longest pointer file accepted; anything larger is not a pointer
+    private static final int MAX_POINTER_LENGTH = 256;
+
+    private FoodSnapshot() {
+    }
+
+    /**
+     * Read the foods of a snapshot.
+     *
+     * @param snapshot The snapshot pointer file
+     * @param source The foods file the snapshot was written for
+     * @param lazy Whether nutrients and components are read on first access
+     * @return The foods in file order, or null if the snapshot is missing,
+     *         stale or unreadable
+     */
+    static List<Food> read(File snapshot, File source, boolean lazy) {
+        File generation = currentGeneration(snapshot);
+        if (generation == null || !generation.exists() || !source.exists()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(generation.toPath(), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != source.length() || buffer.getLong() != source.lastModified()) {
+                return null;
+            }
+            return readFoods(buffer, lazy);
+        } catch (IOException | RuntimeException e) {
+            // A truncated or corrupt snapshot is rebuilt from the text
+            System.err.println("Ignoring food snapshot: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Read the string table and food columns following the header.
+     *
+     * @param buffer The mapped snapshot, positioned after the header
+     * @param lazy Whether nutrients and components are read on first access
+     * @return The foods in file order
+     */
+    private static List<Food> readFoods(ByteBuffer buffer, boolean lazy) {
+        int[] stringOffsets = readInts(buffer, buffer.getInt() + 1);
+        byte[] blob = new byte[buffer.getInt()];
+        buffer.get(blob);
+        String[] strings = new String[stringOffsets.length - 1];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = new String(blob, stringOffsets[i], stringOffsets[i + 1] - stringOffsets[i],
+                    StandardCharsets.UTF_8);
+        }
+
+        int count = buffer.getInt();
+        byte[] types = new byte[count];
+        buffer.get(types);
+        int[] identifiers = readInts(buffer, count);
+        int[] keywordStarts = readInts(buffer, count + 1);
+        int[] keywords = readInts(buffer, keywordStarts[count]);
+        double[] calories = readDoubles(buffer, count);
+
+        // Column positions, skipping over the detail columns
+        int nutrientStarts = buffer.position();
+        int nutrientCount = buffer.getInt(nutrientStarts + count * Integer.BYTES);
+        int nutrientNames = nutrientStarts + (count + 1) * Integer.BYTES;
+        int nutrientAmounts = nutrientNames + nutrientCount * Integer.BYTES;
+        int componentStarts = nutrientAmounts + nutrientCount * Double.BYTES;
+        int componentCount = buffer.getInt(componentStarts + count * Integer.BYTES);
+        int componentFoods = componentStarts + (count + 1) * Integer.BYTES;
+        int componentServings = componentFoods + componentCount * Integer.BYTES;
+        if (componentServings + componentCount * Double.BYTES > buffer.limit()) {
+            throw new IllegalStateException("snapshot is truncated");
+        }
+        LazyFoodDetails details = new LazyFoodDetails(buffer, strings, nutrientStarts, nutrientNames,
+                nutrientAmounts, componentStarts, componentFoods, componentServings);
+
+        List<Food> foods = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String identifier = strings[identifiers[i]];
+            String[] foodKeywords = new String[keywordStarts[i + 1] - keywordStarts[i]];
+            for (int k = 0; k < foodKeywords.length; k++) {
+                foodKeywords[k] = strings[keywords[keywordStarts[i] + k]];
+            }
+
+            if (lazy) {
+                foods.add(types[i] == BASIC_FOOD
+                        ? new BasicFood(identifier, foodKeywords, calories[i], details, i)
+                        : new CompositeFood(identifier, foodKeywords, calories[i], details, i));
+            } else if (types[i] == BASIC_FOOD) {
+                BasicFood food = new BasicFood(identifier, foodKeywords, calories[i]);
+                for (int n = buffer.getInt(nutrientStarts + i * Integer.BYTES);
+                        n < buffer.getInt(nutrientStarts + (i + 1) * Integer.BYTES); n++) {
+                    food.addNutrient(strings[buffer.getInt(nutrientNames + n * Integer.BYTES)],
+                            buffer.getDouble(nutrientAmounts + n * Double.BYTES));
+                }
+                foods.add(food);
+            } else {
+                foods.add(new CompositeFood(identifier, foodKeywords));
+            }
+        }
+        details.setFoods(foods);
+
+        // Components may come later in the file, so link once all foods exist
+        if (!lazy) {
+            for (int i = 0; i < count; i++) {
+                if (types[i] == COMPOSITE_FOOD) {
+                    LazyFoodDetails.Components components = details.components(i);
+                    ((CompositeFood) foods.get(i)).setComponents(components.foods, components.servings);
+                }
+            }
+        }
+        return foods;
+    }
+
+    /**
+     * Write a snapshot of the foods in a foods file. Must be called after
+     * the foods file is written, since its length and modification time are
+     * recorded.
+     *
+     * @param snapshot The snapshot pointer file
+     * @param source The foods file holding the same foods
+     * @param foods The foods, in file order
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void write(File snapshot, File source, Collection<Food> foods) throws IOException {
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> positions = new HashMap<>();
+        int position = 0;
+        for (Food food : foods) {
+            positions.put(food.getIdentifier(), position++);
+        }
+
+        int count = foods.size();
+        byte[] types = new byte[count];
+        int[] identifiers = new int[count];
+        int[] keywordStarts = new int[count + 1];
+        IntColumn keywords = new IntColumn();
+        double[] calories = new double[count];
+        int[] nutrientStarts = new int[count + 1];
+        IntColumn nutrientNames = new IntColumn();
+        DoubleColumn nutrientAmounts = new DoubleColumn();
+        int[] componentStarts = new int[count + 1];
+        IntColumn componentFoods = new IntColumn();
+        DoubleColumn componentServings = new DoubleColumn();
+
+        int i = 0;
+        for (Food food : foods) {
+            identifiers[i] = stringId(food.getIdentifier(), stringIds, strings);
+            for (String keyword : food.getKeywords()) {
+                keywords.add(stringId(keyword, stringIds, strings));
+            }
+
+            if (food instanceof BasicFood) {
+                BasicFood basicFood = (BasicFood) food;
+                types[i] = BASIC_FOOD;
+                calories[i] = basicFood.getCaloriesPerServing();
+                LazyFoodDetails.Nutrients nutrients = basicFood.getNutrients();
+                for (int n = 0; n < nutrients.ordinals.length; n++) {
+                    String name = NutrientDictionary.name(nutrients.ordinals[n]);
+                    // Calories are set by the constructor, as in the foods file
+                    if (!name.equals("calories")) {
+                        nutrientNames.add(stringId(name, stringIds, strings));
+                        nutrientAmounts.add(nutrients.amounts[n]);
+                    }
+                }
+            } else {
+                CompositeFood compositeFood = (CompositeFood) food;
+                types[i] = COMPOSITE_FOOD;
+                calories[i] = Double.NaN;
+                List<Food> components = compositeFood.getComponents();
+                for (int c = 0; c < components.size(); c++) {
+                    // Like the foods file, components are linked by identifier
+                    Integer component = positions.get(components.get(c).getIdentifier());
+                    if (component != null) {
+                        componentFoods.add(component);
+                        componentServings.add(compositeFood.getServings().get(c));
+                    }
+                }
+            }
+
+            i++;
+            keywordStarts[i] = keywords.size;
+            nutrientStarts[i] = nutrientNames.size;
+            componentStarts[i] = componentFoods.size;
+        }
+
+        // Sum composite calories over the written components rather than asking
+        // the foods, whose components may have been updated since the source was read
+        for (int f = 0; f < count; f++) {
+            compositeCalories(f, calories, componentStarts, componentFoods, componentServings);
+        }
+
+        // Never overwrite the current generation, which may be mapped
+        File current = currentGeneration(snapshot);
+        long number = current != null ? generationNumber(snapshot, current) + 1 : 1;
+        File generation = new File(snapshot.getPath() + "." + number);
+        try (FileOutputStream file = new FileOutputStream(generation);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(source.length());
+            out.writeLong(source.lastModified());
+
+            byte[][] encoded = new byte[strings.size()][];
+            int offset = 0;
+            out.writeInt(strings.size());
+            out.writeInt(0);
+            for (int s = 0; s < encoded.length; s++) {
+                encoded[s] = strings.get(s).getBytes(StandardCharsets.UTF_8);
+                offset += encoded[s].length;
+                out.writeInt(offset);
+            }
+            out.writeInt(offset);
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+
+            out.writeInt(count);
+            out.write(types);
+            writeInts(out, identifiers, count);
+            writeInts(out, keywordStarts, count + 1);
+            writeInts(out, keywords.values, keywords.size);
+            writeDoubles(out, calories, count);
+            writeInts(out, nutrientStarts, count + 1);
+            writeInts(out, nutrientNames.values, nutrientNames.size);
+            writeDoubles(out, nutrientAmounts.values, nutrientAmounts.size);
+            writeInts(out, componentStarts, count + 1);
+            writeInts(out, componentFoods.values, componentFoods.size);
+            writeDoubles(out, componentServings.values, componentServings.size);
+            out.flush();
+            file.getFD().sync();
+        }
+
+        // The generation is durable, so switch the pointer to it
+        File temp = new File(snapshot.getPath() + ".tmp");
+        Files.write(temp.toPath(), generation.getName().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        deleteOldGenerations(snapshot, generation);
+    }
+
+    /**
+     * Get the generation file a snapshot pointer names.
+     *
+     * @param snapshot The snapshot pointer file
+     * @return The generation file, or null if there is no valid pointer
+     */
+    private static File currentGeneration(File snapshot) {
+        if (!snapshot.isFile() || snapshot.length() > MAX_POINTER_LENGTH) {
+            return null;
+        }
+        try {
+            String name = new String(Files.readAllBytes(snapshot.toPath()), StandardCharsets.UTF_8).trim();
+            File generation = new File(snapshot.getAbsoluteFile().getParentFile(), name);
+            return generationNumber(snapshot, generation) > 0 ? generation : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the number of a snapshot generation file.
+     *
+     * @param snapshot The snapshot pointer file
+     * @param generation The generation file
+     * @return The generation number, or -1 if the file is not a generation
+     */
+    private static long generationNumber(File snapshot, File generation) {
+        String prefix = snapshot.getName() + ".";
+        String name = generation.getName();
+        if (!name.startsWith(prefix) || name.length() == prefix.length()) {
+            return -1;
+        }
+        long number = 0;
+        for (int i = prefix.length(); i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9' || number > Long.MAX_VALUE / 10 - 1) {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Delete the snapshot generations other than the current one. A
+     * generation that is still mapped may refuse deletion; it is retried
+     * after the next write.
+     *
+     * @param snapshot The snapshot pointer file
+     * @param current The current generation file
+     */
+    private static void deleteOldGenerations(File snapshot, File current) {
+        File[] files = snapshot.getAbsoluteFile().getParentFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (generationNumber(snapshot, file) > 0 && !file.getName().equals(current.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Get the id of a string in the string table, adding it if needed.
+     *
+     * @param value The string
+     * @param ids The ids of the strings added so far
+     * @param strings The strings added so far
+     * @return The id
+     */
+    private static int stringId(String value, Map<String, Integer> ids, List<String> strings) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = strings.size();
+            ids.put(value, id);
+            strings.add(value);
+        }
+        return id;
+    }
+
+    /**
+     * Read a column of ints.
+     *
+     * @param buffer The buffer
+     * @param length The number of values
+     * @return The values
+     */
+    private static int[] readInts(ByteBuffer buffer, int length) {
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + length * Integer.BYTES);
+        return values;
+    }
+
+    /**
+     * Read a column of doubles.
+     *
+     * @param buffer The buffer
+     * @param length The number of values
+     * @return The values
+     */
+    private static double[] readDoubles(ByteBuffer buffer, int length) {
+        double[] values = new double[length];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + length * Double.BYTES);
+        return values;
+    }
+
+    /**
+     * Compute the calories of a composite from the calories of its written
+     * components, memoized in the calories column where NaN marks a
+     * composite not yet computed.
+     *
+     * @param index The position of the food
+     * @param calories The calories column
+     * @param componentStarts The component offset column
+     * @param componentFoods The component food column
+     * @param componentServings The component servings column
+     * @return The calories of the food
+     */
+    private static double compositeCalories(int index, double[] calories, int[] componentStarts,
+            IntColumn componentFoods, DoubleColumn componentServings) {
+        if (!Double.isNaN(calories[index])) {
+            return calories[index];
+        }
+        // Composites are acyclic once linked; a cycle would only count as zero
+        calories[index] = 0;
+        double total = 0;
+        for (int c = componentStarts[index]; c < componentStarts[index + 1]; c++) {
+            total += compositeCalories(componentFoods.values[c], calories, componentStarts,
+                    componentFoods, componentServings) * componentServings.values[c];
+        }
+        calories[index] = total;
+        return total;
+    }
+
+    /**
+     * Write a column of ints.
+     *
+     * @param out The output
+     * @param values The values
+     * @param length The number of values to write
+     * @throws IOException if writing fails
+     */
+    private static void writeInts(DataOutputStream out, int[] values, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    /**
+     * Write a column of doubles.
+     *
+     * @param out The output
+     * @param values The values
+     * @param length The number of values to write
+     * @throws IOException if writing fails
+     */
+    private static void writeDoubles(DataOutputStream out, double[] values, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            out.writeDouble(values[i]);
+        }
+    }
+
+    /**
+     * Growable column of ints.
+     */
+    private static class IntColumn {
+        private int[] values = new int[16];
+        private int size;
+
+        /**
+         * Append a value.
+         *
+         * @param value The value
+         */
+        public void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Growable column of doubles.
+     */
+    private static class DoubleColumn {
+        private double[] values = new double[16];
+        private int size;
+
+        /**
+         * Append a value.
+         *
+         * @param value The value
+         */
+        public void add(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
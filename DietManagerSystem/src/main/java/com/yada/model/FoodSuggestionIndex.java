@@ -0,0 +1,274 @@
+package com.yada.model;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Sorted prefix index used for autocomplete.
+ * Normalized identifiers are kept in one sorted key table and the individual
+ * words of identifiers plus keywords in another. Each table is a sorted
+ * array of distinct keys with the ids of the foods under every key packed
+ * into one int array, so a prefix lookup is a binary search for the first
+ * key followed by a scan that stops as soon as enough completions have been
+ * collected.
+ *
+ * The index is built once by FoodCatalog and only read afterwards.
+ */
+class FoodSuggestionIndex {
+    private final Food[] documents;
+    private final KeyTable identifiers;
+    private final KeyTable words;
+
+    /**
+     * Constructor for FoodSuggestionIndex.
+     *
+     * @param foods The foods to index
+     */
+    public FoodSuggestionIndex(Collection<Food> foods) {
+        documents = foods.toArray(new Food[0]);
+        KeyTableBuilder identifierBuilder = new KeyTableBuilder();
+        KeyTableBuilder wordBuilder = new KeyTableBuilder();
+        for (int id = 0; id < documents.length; id++) {
+            Food food = documents[id];
+            identifierBuilder.add(food.getNormalizedIdentifier(), id);
+
+            for (String word : Food.tokenize(food.getIdentifier())) {
+                wordBuilder.add(word, id);
+            }
+            for (String keyword : food.getNormalizedKeywords()) {
+                wordBuilder.add(keyword, id);
+            }
+        }
+        identifiers = identifierBuilder.build();
+        words = wordBuilder.build();
+    }
+
+    /**
+     * Collect foods whose identifier starts with a prefix, in identifier order.
+     *
+     * @param prefix The normalized prefix
+     * @param limit The maximum number of foods to collect
+     * @param accept Filter for foods that may be returned
+     * @param results The list to add foods to
+     */
+    public void identifierMatches(String prefix, int limit, Predicate<Food> accept, List<Food> results) {
+        collect(identifiers, prefix, limit, accept, results);
+    }
+
+    /**
+     * Collect foods with a word or keyword starting with a prefix, in order
+     * of the first such word.
+     *
+     * @param prefix The normalized prefix
+     * @param limit The maximum number of foods to collect
+     * @param accept Filter for foods that may be returned
+     * @param results The list to add foods to
+     */
+    public void wordMatches(String prefix, int limit, Predicate<Food> accept, List<Food> results) {
+        collect(words, prefix, limit, accept, results);
+    }
+
+    /**
+     * Pass every food with a word or keyword starting with a prefix to an
+     * action, once each and in no particular order.
+     *
+     * @param prefix The normalized prefix
+     * @param action The action to call for each food
+     */
+    public void forEachWordMatch(String prefix, Consumer<Food> action) {
+        Set<Food> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int k = words.lowerBound(prefix); k < words.keys.length && words.keys[k].startsWith(prefix); k++) {
+            for (int i = words.offsets[k]; i < words.offsets[k + 1]; i++) {
+                Food food = documents[words.docs[i]];
+                if (seen.add(food)) {
+                    action.accept(food);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the key a food is listed under in wordMatches: its smallest word
+     * or keyword starting with the prefix.
+     *
+     * @param food The food
+     * @param prefix The normalized prefix
+     * @return The key, or null if no word starts with the prefix
+     */
+    static String wordKey(Food food, String prefix) {
+        String key = null;
+        for (String word : Food.tokenize(food.getIdentifier())) {
+            if (word.startsWith(prefix) && (key == null || word.compareTo(key) < 0)) {
+                key = word;
+            }
+        }
+        for (String keyword : food.getNormalizedKeywords()) {
+            if (!keyword.isEmpty() && keyword.startsWith(prefix) && (key == null || keyword.compareTo(key) < 0)) {
+                key = keyword;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Collect foods from the range of keys starting with a prefix.
+     *
+     * @param table The key table to scan
+     * @param prefix The normalized prefix
+     * @param limit The maximum number of foods to collect
+     * @param accept Filter for foods that may be returned
+     * @param results The list to add foods to, holding at most limit foods
+     */
+    private void collect(KeyTable table, String prefix, int limit, Predicate<Food> accept, List<Food> results) {
+        // A food listed under several words is only collected once
+        Set<Food> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        seen.addAll(results);
+        int collected = 0;
+        for (int k = table.lowerBound(prefix); k < table.keys.length; k++) {
+            if (collected >= limit || !table.keys[k].startsWith(prefix)) {
+                return;
+            }
+            for (int i = table.offsets[k]; i < table.offsets[k + 1]; i++) {
+                Food food = documents[table.docs[i]];
+                if (accept.test(food) && seen.add(food)) {
+                    results.add(food);
+                    if (++collected >= limit) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorted distinct keys with the food ids under each key. The ids of key
+     * k are docs[offsets[k]] up to docs[offsets[k + 1]], in the order the
+     * foods were added.
+     */
+    private static class KeyTable {
+        private final String[] keys;
+        private final int[] offsets;
+        private final int[] docs;
+
+        /**
+         * Constructor for KeyTable.
+         *
+         * @param keys The sorted keys
+         * @param offsets The start of each key's ids, plus the end of the last
+         * @param docs The food ids
+         */
+        public KeyTable(String[] keys, int[] offsets, int[] docs) {
+            this.keys = keys;
+            this.offsets = offsets;
+            this.docs = docs;
+        }
+
+        /**
+         * Find the first key that is not less than a prefix.
+         *
+         * @param prefix The prefix
+         * @return The key position, or the number of keys if all are less
+         */
+        public int lowerBound(String prefix) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[middle].compareTo(prefix) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Collects (key, food id) pairs and packs them into a KeyTable.
+     */
+    private static class KeyTableBuilder {
+        private final Map<String, Integer> keyIds = new HashMap<>();
+        private String[] keys = new String[1024];
+        private int[] lastDoc = new int[1024];
+        private int[] pairKeys = new int[1024];
+        private int[] pairDocs = new int[1024];
+        private int pairCount;
+
+        /**
+         * Add a food under a key.
+         *
+         * @param key The key
+         * @param doc The food id
+         */
+        public void add(String key, int doc) {
+            if (key.isEmpty()) {
+                return;
+            }
+            Integer known = keyIds.get(key);
+            int keyId;
+            if (known == null) {
+                keyId = keyIds.size();
+                keyIds.put(key, keyId);
+                if (keyId == keys.length) {
+                    keys = Arrays.copyOf(keys, keyId * 2);
+                    lastDoc = Arrays.copyOf(lastDoc, keyId * 2);
+                }
+                keys[keyId] = key;
+            } else {
+                keyId = known;
+                // A food's keys are added together, so a repeat is always for the last food
+                if (lastDoc[keyId] == doc) {
+                    return;
+                }
+            }
+            lastDoc[keyId] = doc;
+
+            if (pairCount == pairKeys.length) {
+                pairKeys = Arrays.copyOf(pairKeys, pairCount * 2);
+                pairDocs = Arrays.copyOf(pairDocs, pairCount * 2);
+            }
+            pairKeys[pairCount] = keyId;
+            pairDocs[pairCount] = doc;
+            pairCount++;
+        }
+
+        /**
+         * Sort the keys and group the food ids by key.
+         *
+         * @return The key table
+         */
+        public KeyTable build() {
+            int keyCount = keyIds.size();
+            String[] sorted = Arrays.copyOf(keys, keyCount);
+            Arrays.sort(sorted);
+            int[] rank = new int[keyCount];
+            for (int r = 0; r < keyCount; r++) {
+                rank[keyIds.get(sorted[r])] = r;
+            }
+
+            // Counting sort of the pairs by key rank, keeping food order within a key
+            int[] offsets = new int[keyCount + 1];
+            for (int i = 0; i < pairCount; i++) {
+                offsets[rank[pairKeys[i]] + 1]++;
+            }
+            for (int r = 0; r < keyCount; r++) {
+                offsets[r + 1] += offsets[r];
+            }
+            int[] next = Arrays.copyOf(offsets, keyCount);
+            int[] docs = new int[pairCount];
+            for (int i = 0; i < pairCount; i++) {
+                docs[next[rank[pairKeys[i]]]++] = pairDocs[i];
+            }
+            return new KeyTable(sorted, offsets, docs);
+        }
+    }
+}
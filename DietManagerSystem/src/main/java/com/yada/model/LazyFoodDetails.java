@@ -0,0 +1,285 @@
+package com.yada.model;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nutrients and composite structure of snapshot foods, read from the mapped
+ * snapshot on first access instead of at startup.
+ *
+ * Foods loaded lazily keep only their identifier, keywords and calories;
+ * their position in the snapshot indexes the nutrient and component offset
+ * columns. Decoded details are kept in a bounded LRU cache, so the heap
+ * holds the details of recently used foods only. The cache is split into
+ * stripes, each an LRU map with its own lock, so that readers of different
+ * foods rarely wait for each other.
+ */
+final class LazyFoodDetails {
+    /**
+     * Number of foods whose decoded details are cached.
+     */
+    static final int CACHE_SIZE = 4096;
+
+    /**
+     * Number of independently locked parts of the cache.
+     */
+    static final int CACHE_STRIPES = 16;
+
+    private final ByteBuffer buffer;
+    private final String[] strings;
+
+    // Byte positions of the offset and value columns in the snapshot
+    private final int nutrientStarts;
+    private final int nutrientNames;
+    private final int nutrientAmounts;
+    private final int componentStarts;
+    private final int componentFoods;
+    private final int componentServings;
+
+    // Dictionary ordinal of each string used as a nutrient name, or -1 until first use
+    private final int[] stringOrdinals;
+
+    private List<Food> foods;
+    private final CacheStripe[] stripes;
+
+    /**
+     * Constructor for LazyFoodDetails.
+     *
+     * @param buffer The mapped snapshot
+     * @param strings The snapshot string table
+     * @param nutrientStarts Position of the nutrient offset column
+     * @param nutrientNames Position of the nutrient name column
+     * @param nutrientAmounts Position of the nutrient amount column
+     * @param componentStarts Position of the component offset column
+     * @param componentFoods Position of the component food column
+     * @param componentServings Position of the component servings column
+     */
+    LazyFoodDetails(ByteBuffer buffer, String[] strings, int nutrientStarts, int nutrientNames,
+            int nutrientAmounts, int componentStarts, int componentFoods, int componentServings) {
+        this.buffer = buffer;
+        this.strings = strings;
+        this.nutrientStarts = nutrientStarts;
+        this.nutrientNames = nutrientNames;
+        this.nutrientAmounts = nutrientAmounts;
+        this.componentStarts = componentStarts;
+        this.componentFoods = componentFoods;
+        this.componentServings = componentServings;
+        this.stringOrdinals = new int[strings.length];
+        Arrays.fill(stringOrdinals, -1);
+        this.stripes = new CacheStripe[CACHE_STRIPES];
+        for (int s = 0; s < CACHE_STRIPES; s++) {
+            stripes[s] = new CacheStripe(CACHE_SIZE / CACHE_STRIPES);
+        }
+    }
+
+    /**
+     * Set the foods of the snapshot, in snapshot order, used to resolve
+     * components. Must be called before the foods are shared.
+     *
+     * @param foods The foods
+     */
+    void setFoods(List<Food> foods) {
+        this.foods = foods;
+    }
+
+    /**
+     * Get the nutrients of a basic food.
+     *
+     * @param index The position of the food in the snapshot
+     * @param calories The calories per serving of the food
+     * @return The nutrients, sorted by dictionary ordinal
+     */
+    Nutrients nutrients(int index, double calories) {
+        Object cached = cached(index);
+        if (cached != null) {
+            return (Nutrients) cached;
+        }
+
+        int from = buffer.getInt(nutrientStarts + index * Integer.BYTES);
+        int to = buffer.getInt(nutrientStarts + (index + 1) * Integer.BYTES);
+        int[] ordinals = new int[to - from + 1];
+        double[] amounts = new double[to - from + 1];
+        int size = insert(ordinals, amounts, 0, NutrientDictionary.ordinal("calories"), calories);
+        for (int n = from; n < to; n++) {
+            size = insert(ordinals, amounts, size, ordinal(buffer.getInt(nutrientNames + n * Integer.BYTES)),
+                    buffer.getDouble(nutrientAmounts + n * Double.BYTES));
+        }
+        Nutrients nutrients = new Nutrients(Arrays.copyOf(ordinals, size), Arrays.copyOf(amounts, size));
+
+        cache(index, nutrients);
+        return nutrients;
+    }
+
+    /**
+     * Get the components of a composite food.
+     *
+     * @param index The position of the food in the snapshot
+     * @return The components
+     */
+    Components components(int index) {
+        Object cached = cached(index);
+        if (cached != null) {
+            return (Components) cached;
+        }
+
+        int from = buffer.getInt(componentStarts + index * Integer.BYTES);
+        int to = buffer.getInt(componentStarts + (index + 1) * Integer.BYTES);
+        List<Food> componentList = new ArrayList<>(to - from);
+        List<Double> servingList = new ArrayList<>(to - from);
+        for (int c = from; c < to; c++) {
+            componentList.add(foods.get(buffer.getInt(componentFoods + c * Integer.BYTES)));
+            servingList.add(buffer.getDouble(componentServings + c * Double.BYTES));
+        }
+        Components components = new Components(Collections.unmodifiableList(componentList),
+                Collections.unmodifiableList(servingList));
+
+        cache(index, components);
+        return components;
+    }
+
+    /**
+     * Get the cached details of a food.
+     *
+     * @param index The position of the food in the snapshot
+     * @return The details, or null if they are not cached
+     */
+    private Object cached(int index) {
+        CacheStripe stripe = stripe(index);
+        synchronized (stripe) {
+            return stripe.get(index);
+        }
+    }
+
+    /**
+     * Cache the decoded details of a food. Racing threads decode the same
+     * details, so whichever is cached last is as good as the other.
+     *
+     * @param index The position of the food in the snapshot
+     * @param value The details
+     */
+    private void cache(int index, Object value) {
+        CacheStripe stripe = stripe(index);
+        synchronized (stripe) {
+            stripe.put(index, value);
+        }
+    }
+
+    /**
+     * Get the cache stripe of a food.
+     *
+     * @param index The position of the food in the snapshot
+     * @return The stripe
+     */
+    private CacheStripe stripe(int index) {
+        // Mix the bits so that foods next to each other land in different stripes
+        int hash = index * 0x9E3779B9;
+        return stripes[(hash >>> 16) & (CACHE_STRIPES - 1)];
+    }
+
+    /**
+     * Get the dictionary ordinal of a nutrient name from the string table.
+     *
+     * @param stringId The id of the name in the string table
+     * @return The ordinal
+     */
+    private int ordinal(int stringId) {
+        int ordinal = stringOrdinals[stringId];
+        if (ordinal < 0) {
+            // Racing threads compute the same ordinal
+            ordinal = NutrientDictionary.ordinal(strings[stringId].toLowerCase());
+            stringOrdinals[stringId] = ordinal;
+        }
+        return ordinal;
+    }
+
+    /**
+     * Insert or replace a nutrient in arrays sorted by ordinal, as
+     * BasicFood.addNutrient does.
+     *
+     * @param ordinals The ordinals
+     * @param amounts The amounts
+     * @param size The number of nutrients in the arrays
+     * @param ordinal The ordinal to insert
+     * @param amount The amount
+     * @return The new number of nutrients
+     */
+    private static int insert(int[] ordinals, double[] amounts, int size, int ordinal, double amount) {
+        int index = Arrays.binarySearch(ordinals, 0, size, ordinal);
+        if (index >= 0) {
+            amounts[index] = amount;
+            return size;
+        }
+        int insertAt = -index - 1;
+        System.arraycopy(ordinals, insertAt, ordinals, insertAt + 1, size - insertAt);
+        System.arraycopy(amounts, insertAt, amounts, insertAt + 1, size - insertAt);
+        ordinals[insertAt] = ordinal;
+        amounts[insertAt] = amount;
+        return size + 1;
+    }
+
+    /**
+     * One part of the details cache, evicting its least recently used food.
+     */
+    private static class CacheStripe extends LinkedHashMap<Integer, Object> {
+        private final int capacity;
+
+        /**
+         * Constructor for CacheStripe.
+         *
+         * @param capacity The number of foods kept
+         */
+        CacheStripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Object> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    /**
+     * Nutrients of a basic food, as parallel arrays that are never modified
+     * once the holder is shared.
+     */
+    static class Nutrients {
+        final int[] ordinals;
+        final double[] amounts;
+
+        /**
+         * Constructor for Nutrients.
+         *
+         * @param ordinals The nutrient ordinals, sorted
+         * @param amounts The amount of each nutrient
+         */
+        Nutrients(int[] ordinals, double[] amounts) {
+            this.ordinals = ordinals;
+            this.amounts = amounts;
+        }
+    }
+
+    /**
+     * Decoded components of a composite food.
+     */
+    static class Components {
+        final List<Food> foods;
+        final List<Double> servings;
+
+        /**
+         * Constructor for Components.
+         *
+         * @param foods The component foods
+         * @param servings The servings of each component
+         */
+        Components(List<Food> foods, List<Double> servings) {
+            this.foods = foods;
+            this.servings = servings;
+        }
+    }
+}
@@ -7,6 +7,9 @@ public class LogEntry {
     private Food food;
     private double servings;
     
+    // Calories when the entry was logged, as stored in the log files
+    private final double calories;
+    
     /**
      * Constructor for LogEntry.
      * 
@@ -16,6 +19,7 @@ public class LogEntry {
     public LogEntry(Food food, double servings) {
         this.food = food;
         this.servings = servings;
+        this.calories = food.getCaloriesPerServing() * servings;
     }
     
     /**
@@ -37,11 +41,12 @@ public class LogEntry {
     }
     
     /**
-     * Get the total calories.
+     * Get the total calories, as of when the entry was logged. Later edits
+     * to the food do not change what was already eaten.
      * 
      * @return The total calories
      */
     public double getCalories() {
-        return food.getCaloriesPerServing() * servings;
+        return calories;
     }
 }
\ No newline at end of file
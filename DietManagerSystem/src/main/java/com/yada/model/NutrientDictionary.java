@@ -0,0 +1,73 @@
+package com.yada.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global dictionary of nutrient names.
+ * Every distinct nutrient name gets a small ordinal once, so foods can store
+ * their nutrients as primitive (ordinal, amount) arrays instead of each
+ * holding its own map with repeated name strings.
+ */
+final class NutrientDictionary {
+    private static final Map<String, Integer> ORDINALS = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[0];
+
+    private NutrientDictionary() {
+    }
+
+    /**
+     * Get the ordinal for a nutrient name, assigning one if the name is new.
+     *
+     * @param name The lowercase nutrient name
+     * @return The ordinal
+     */
+    static int ordinal(String name) {
+        Integer ordinal = ORDINALS.get(name);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        synchronized (NutrientDictionary.class) {
+            ordinal = ORDINALS.get(name);
+            if (ordinal == null) {
+                ordinal = names.length;
+                String[] grown = Arrays.copyOf(names, ordinal + 1);
+                grown[ordinal] = name;
+                names = grown;
+                ORDINALS.put(name, ordinal);
+            }
+            return ordinal;
+        }
+    }
+
+    /**
+     * Find the ordinal for a nutrient name without assigning one.
+     *
+     * @param name The lowercase nutrient name
+     * @return The ordinal, or -1 if no food has this nutrient
+     */
+    static int find(String name) {
+        Integer ordinal = ORDINALS.get(name);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * Get the nutrient name for an ordinal.
+     *
+     * @param ordinal The ordinal
+     * @return The nutrient name
+     */
+    static String name(int ordinal) {
+        return names[ordinal];
+    }
+
+    /**
+     * Get the number of known nutrient names.
+     *
+     * @return The number of names
+     */
+    static int size() {
+        return names.length;
+    }
+}
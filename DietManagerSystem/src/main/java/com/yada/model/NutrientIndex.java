@@ -0,0 +1,274 @@
+package com.yada.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Column index over the nutrients of basic foods.
+ * Each nutrient ordinal has a column of (amount, document id) pairs kept in
+ * primitive arrays and sorted by amount, so a range condition is two binary
+ * searches followed by setting the matching ids in a bitmap. Conditions on
+ * several nutrients are combined by intersecting their bitmaps.
+ *
+ * The index is built from the foods given by FoodCatalog on the first
+ * query rather than up front, so loading the catalog does not have to read
+ * the nutrients of every food (see LazyFoodDetails). After that it is only
+ * read.
+ */
+class NutrientIndex {
+    private List<BasicFood> documents;
+    private BitSet all;
+    private Column[] columns;
+
+    // Foods still to be indexed, or null once the index is built
+    private Collection<Food> pending;
+
+    /**
+     * Constructor for NutrientIndex.
+     *
+     * @param foods The foods to index; only basic foods are indexed
+     */
+    public NutrientIndex(Collection<Food> foods) {
+        documents = new ArrayList<>();
+        all = new BitSet();
+        columns = new Column[0];
+        pending = foods;
+    }
+
+    /**
+     * Build the index if this is the first query.
+     */
+    private synchronized void ensureBuilt() {
+        if (pending == null) {
+            return;
+        }
+        for (Food food : pending) {
+            if (food instanceof BasicFood) {
+                add((BasicFood) food);
+            }
+        }
+        seal();
+        pending = null;
+    }
+
+    /**
+     * Add a basic food to the index.
+     *
+     * @param food The food to index
+     */
+    private void add(BasicFood food) {
+        int id = documents.size();
+        documents.add(food);
+        all.set(id);
+
+        LazyFoodDetails.Nutrients nutrients = food.getNutrients();
+        for (int i = 0; i < nutrients.ordinals.length; i++) {
+            int ordinal = nutrients.ordinals[i];
+            if (ordinal >= columns.length) {
+                columns = Arrays.copyOf(columns, NutrientDictionary.size());
+            }
+            if (columns[ordinal] == null) {
+                columns[ordinal] = new Column();
+            }
+            columns[ordinal].add(nutrients.amounts[i], id);
+        }
+    }
+
+    /**
+     * Sort every column after the last add.
+     */
+    private void seal() {
+        for (Column column : columns) {
+            if (column != null) {
+                column.sort();
+            }
+        }
+    }
+
+    /**
+     * Check whether a food satisfies all nutrient ranges, for foods that
+     * are not in the index.
+     *
+     * @param food The food
+     * @param ranges The nutrient ranges
+     * @return true if every range contains the food's amount
+     */
+    static boolean matches(BasicFood food, NutrientRange... ranges) {
+        for (NutrientRange range : ranges) {
+            if (!range.contains(food.getNutrient(range.getNutrient()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the foods satisfying all nutrient ranges. A food without an
+     * entry for a nutrient counts as having zero of it, as in
+     * BasicFood.getNutrient.
+     *
+     * @param ranges The nutrient ranges
+     * @return The matching foods, in the order they were added
+     */
+    public List<BasicFood> find(NutrientRange... ranges) {
+        ensureBuilt();
+        BitSet result = (BitSet) all.clone();
+        for (NutrientRange range : ranges) {
+            if (result.isEmpty()) {
+                break;
+            }
+            result.and(matching(range));
+        }
+
+        List<BasicFood> foods = new ArrayList<>(result.cardinality());
+        for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+            foods.add(documents.get(id));
+        }
+        return foods;
+    }
+
+    /**
+     * Get the bitmap of document ids satisfying one range.
+     *
+     * @param range The nutrient range
+     * @return The matching ids
+     */
+    private BitSet matching(NutrientRange range) {
+        int ordinal = NutrientDictionary.find(range.getNutrient());
+        Column column = ordinal >= 0 && ordinal < columns.length ? columns[ordinal] : null;
+        BitSet bits = new BitSet(documents.size());
+        if (column != null) {
+            column.select(range.getMin(), range.getMax(), bits);
+        }
+
+        // Foods without the nutrient have zero of it
+        if (range.contains(0.0)) {
+            BitSet missing = (BitSet) all.clone();
+            if (column != null) {
+                missing.andNot(column.present());
+            }
+            bits.or(missing);
+        }
+        return bits;
+    }
+
+    /**
+     * Amounts of one nutrient, sorted when the index is sealed.
+     */
+    private static class Column {
+        private double[] amounts = new double[16];
+        private int[] ids = new int[16];
+        private int size;
+        private boolean sorted = true;
+        private BitSet present = new BitSet();
+
+        /**
+         * Append an amount for a document.
+         *
+         * @param amount The nutrient amount
+         * @param id The document id
+         */
+        public void add(double amount, int id) {
+            if (size == amounts.length) {
+                amounts = Arrays.copyOf(amounts, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            amounts[size] = amount;
+            ids[size++] = id;
+            present.set(id);
+            sorted = false;
+        }
+
+        /**
+         * Get the ids of documents that have an entry in this column.
+         *
+         * @return The bitmap of ids
+         */
+        public BitSet present() {
+            return present;
+        }
+
+        /**
+         * Set the ids of all entries with min <= amount <= max.
+         *
+         * @param min The smallest accepted amount
+         * @param max The largest accepted amount
+         * @param bits The bitmap to set ids in
+         */
+        public void select(double min, double max, BitSet bits) {
+            for (int i = lowerBound(min); i < size && amounts[i] <= max; i++) {
+                bits.set(ids[i]);
+            }
+        }
+
+        /**
+         * Find the first position whose amount is at least a value.
+         *
+         * @param value The value
+         * @return The position
+         */
+        private int lowerBound(double value) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (amounts[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Sort the entries by amount if any were added since the last sort.
+         */
+        public void sort() {
+            if (sorted) {
+                return;
+            }
+            double[] amountBuffer = new double[size];
+            int[] idBuffer = new int[size];
+            mergeSort(0, size, amountBuffer, idBuffer);
+            sorted = true;
+        }
+
+        /**
+         * Merge sort a range of entries by amount, moving ids along.
+         *
+         * @param from The first position
+         * @param to The position after the last
+         * @param amountBuffer Scratch space for amounts
+         * @param idBuffer Scratch space for ids
+         */
+        private void mergeSort(int from, int to, double[] amountBuffer, int[] idBuffer) {
+            if (to - from < 2) {
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            mergeSort(from, mid, amountBuffer, idBuffer);
+            mergeSort(mid, to, amountBuffer, idBuffer);
+            if (amounts[mid - 1] <= amounts[mid]) {
+                return;
+            }
+
+            int left = from;
+            int right = mid;
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < mid && amounts[left] <= amounts[right])) {
+                    amountBuffer[i] = amounts[left];
+                    idBuffer[i] = ids[left++];
+                } else {
+                    amountBuffer[i] = amounts[right];
+                    idBuffer[i] = ids[right++];
+                }
+            }
+            System.arraycopy(amountBuffer, from, amounts, from, to - from);
+            System.arraycopy(idBuffer, from, ids, from, to - from);
+        }
+    }
+}
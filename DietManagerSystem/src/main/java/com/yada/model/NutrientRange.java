@@ -0,0 +1,92 @@
+package com.yada.model;
+
+/**
+ * Inclusive range condition on one nutrient, such as "protein >= 20".
+ */
+public class NutrientRange {
+    private final String nutrient;
+    private final double min;
+    private final double max;
+
+    /**
+     * Constructor for NutrientRange.
+     *
+     * @param nutrient The nutrient name
+     * @param min The smallest accepted amount
+     * @param max The largest accepted amount
+     */
+    public NutrientRange(String nutrient, double min, double max) {
+        this.nutrient = nutrient.toLowerCase();
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Create a condition that a nutrient is at least an amount.
+     *
+     * @param nutrient The nutrient name
+     * @param min The smallest accepted amount
+     * @return The range
+     */
+    public static NutrientRange atLeast(String nutrient, double min) {
+        return new NutrientRange(nutrient, min, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Create a condition that a nutrient is at most an amount.
+     *
+     * @param nutrient The nutrient name
+     * @param max The largest accepted amount
+     * @return The range
+     */
+    public static NutrientRange atMost(String nutrient, double max) {
+        return new NutrientRange(nutrient, Double.NEGATIVE_INFINITY, max);
+    }
+
+    /**
+     * Get the nutrient name.
+     *
+     * @return The lowercase nutrient name
+     */
+    public String getNutrient() {
+        return nutrient;
+    }
+
+    /**
+     * Get the smallest accepted amount.
+     *
+     * @return The minimum
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Get the largest accepted amount.
+     *
+     * @return The maximum
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Check whether an amount is in the range.
+     *
+     * @param amount The amount
+     * @return true if min <= amount <= max
+     */
+    public boolean contains(double amount) {
+        return amount >= min && amount <= max;
+    }
+
+    /**
+     * Convert to string representation.
+     *
+     * @return The string representation
+     */
+    @Override
+    public String toString() {
+        return min + " <= " + nutrient + " <= " + max;
+    }
+}
@@ -0,0 +1,499 @@
+package com.yada.model;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable hash map whose updates return a new map sharing all but one
+ * path with the old one (a hash array mapped trie). Adding, replacing or
+ * removing a key copies at most seven small nodes, so a writer can derive
+ * the next catalog snapshot without copying the whole overlay, and
+ * readers of older snapshots are never affected.
+ *
+ * Keys must not be null; values may be, and a key mapped to null is still
+ * contained in the map.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+final class PersistentMap<K, V> {
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+
+    // Returned by lookups of absent keys, since null is a valid value
+    private static final Object NOT_FOUND = new Object();
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final Node root;
+    private final int size;
+
+    /**
+     * Constructor for PersistentMap.
+     *
+     * @param root The root node, or null for the empty map
+     * @param size The number of keys
+     */
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Get the empty map.
+     *
+     * @param <K> The key type
+     * @param <V> The value type
+     * @return The empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Get the number of keys.
+     *
+     * @return The number of keys
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Check whether the map has no keys.
+     *
+     * @return true if the map is empty
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Check whether a key is in the map, possibly mapped to null.
+     *
+     * @param key The key
+     * @return true if the key is in the map
+     */
+    boolean containsKey(Object key) {
+        return root != null && root.find(0, hash(key.hashCode()), key) != NOT_FOUND;
+    }
+
+    /**
+     * Get the value of a key.
+     *
+     * @param key The key
+     * @return The value, or null if the key is absent or mapped to null
+     */
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        if (root == null) {
+            return null;
+        }
+        Object value = root.find(0, hash(key.hashCode()), key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    /**
+     * Get the value of a Long key without boxing the key.
+     *
+     * @param key The key
+     * @return The value, or null if the key is absent or mapped to null
+     */
+    @SuppressWarnings("unchecked")
+    V getLong(long key) {
+        if (root == null) {
+            return null;
+        }
+        Object value = root.findLong(0, hash(Long.hashCode(key)), key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    /**
+     * Derive a map with a key added or its value replaced.
+     *
+     * @param key The key
+     * @param value The value, possibly null
+     * @return The new map, or this map if the key already had this value
+     */
+    PersistentMap<K, V> put(K key, V value) {
+        int hash = hash(key.hashCode());
+        if (root == null) {
+            return new PersistentMap<>(new BitmapNode(1 << (hash & MASK), new Object[] {key, value}), 1);
+        }
+        boolean[] added = new boolean[1];
+        Node next = root.put(0, hash, key, value, added);
+        return next == root ? this : new PersistentMap<>(next, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Derive a map without a key.
+     *
+     * @param key The key
+     * @return The new map, or this map if the key is absent
+     */
+    PersistentMap<K, V> remove(Object key) {
+        if (root == null) {
+            return this;
+        }
+        Node next = root.remove(0, hash(key.hashCode()), key);
+        if (next == root) {
+            return this;
+        }
+        return next == null ? empty() : new PersistentMap<>(next, size - 1);
+    }
+
+    /**
+     * Call an action for every key and value, in no particular order.
+     *
+     * @param action The action
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    /**
+     * Spread the bits of a hash code, since keys are routed by its low bits.
+     *
+     * @param h The hash code
+     * @return The spread hash
+     */
+    private static int hash(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Check whether a stored key is a given Long key.
+     *
+     * @param stored The stored key
+     * @param key The Long key
+     * @return true if they are equal
+     */
+    private static boolean isLong(Object stored, long key) {
+        return stored instanceof Long && (Long) stored == key;
+    }
+
+    /**
+     * Build the node holding two keys whose hashes agree below a shift.
+     *
+     * @param shift The bit position the node routes on
+     * @param hash1 The hash of the first key
+     * @param key1 The first key
+     * @param value1 The value of the first key
+     * @param hash2 The hash of the second key
+     * @param key2 The second key
+     * @param value2 The value of the second key
+     * @return The node
+     */
+    private static Node pair(int shift, int hash1, Object key1, Object value1,
+            int hash2, Object key2, Object value2) {
+        if (hash1 == hash2) {
+            return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+        }
+        int bit1 = (hash1 >>> shift) & MASK;
+        int bit2 = (hash2 >>> shift) & MASK;
+        if (bit1 == bit2) {
+            return new BitmapNode(1 << bit1,
+                    new Object[] {null, pair(shift + BITS, hash1, key1, value1, hash2, key2, value2)});
+        }
+        Object[] array = bit1 < bit2
+                ? new Object[] {key1, value1, key2, value2}
+                : new Object[] {key2, value2, key1, value1};
+        return new BitmapNode((1 << bit1) | (1 << bit2), array);
+    }
+
+    /**
+     * Copy an array with one element replaced.
+     *
+     * @param array The array
+     * @param index The position to replace
+     * @param value The new element
+     * @return The copy
+     */
+    private static Object[] with(Object[] array, int index, Object value) {
+        Object[] copy = array.clone();
+        copy[index] = value;
+        return copy;
+    }
+
+    /**
+     * Copy an array with a key and value pair inserted.
+     *
+     * @param array The array of pairs
+     * @param index The position of the new pair
+     * @param key The key
+     * @param value The value
+     * @return The copy
+     */
+    private static Object[] inserted(Object[] array, int index, Object key, Object value) {
+        Object[] copy = new Object[array.length + 2];
+        System.arraycopy(array, 0, copy, 0, index);
+        copy[index] = key;
+        copy[index + 1] = value;
+        System.arraycopy(array, index, copy, index + 2, array.length - index);
+        return copy;
+    }
+
+    /**
+     * Copy an array with a key and value pair left out.
+     *
+     * @param array The array of pairs
+     * @param index The position of the pair
+     * @return The copy
+     */
+    private static Object[] removed(Object[] array, int index) {
+        Object[] copy = new Object[array.length - 2];
+        System.arraycopy(array, 0, copy, 0, index);
+        System.arraycopy(array, index + 2, copy, index, array.length - index - 2);
+        return copy;
+    }
+
+    /**
+     * A node of the trie. Nodes are immutable.
+     */
+    private abstract static class Node {
+        /**
+         * Find the value of a key.
+         *
+         * @param shift The bit position this node routes on
+         * @param hash The spread hash of the key
+         * @param key The key
+         * @return The value, or NOT_FOUND
+         */
+        abstract Object find(int shift, int hash, Object key);
+
+        /**
+         * Find the value of a Long key without boxing it.
+         *
+         * @param shift The bit position this node routes on
+         * @param hash The spread hash of the key
+         * @param key The key
+         * @return The value, or NOT_FOUND
+         */
+        abstract Object findLong(int shift, int hash, long key);
+
+        /**
+         * Derive a node with a key added or replaced.
+         *
+         * @param shift The bit position this node routes on
+         * @param hash The spread hash of the key
+         * @param key The key
+         * @param value The value
+         * @param added Set to true if the key was not in the node
+         * @return The new node, or this node if nothing changed
+         */
+        abstract Node put(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * Derive a node without a key.
+         *
+         * @param shift The bit position this node routes on
+         * @param hash The spread hash of the key
+         * @param key The key
+         * @return The new node, this node if the key is absent, or null if
+         *         the node is left empty
+         */
+        abstract Node remove(int shift, int hash, Object key);
+
+        /**
+         * Call an action for every key and value under this node.
+         *
+         * @param action The action
+         */
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+
+    /**
+     * Node routing on five bits of the hash. The array holds a key and value
+     * pair per set bit, in bit order; a null key marks a child node in the
+     * value position.
+     */
+    private static final class BitmapNode extends Node {
+        private final int bitmap;
+        private final Object[] array;
+
+        /**
+         * Constructor for BitmapNode.
+         *
+         * @param bitmap The bits present
+         * @param array The pairs
+         */
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        /**
+         * Get the array position of a bit's pair.
+         *
+         * @param bit The bit
+         * @return The position of the pair's key
+         */
+        private int index(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int i = index(bit);
+            Object stored = array[i];
+            if (stored == null) {
+                return ((Node) array[i + 1]).find(shift + BITS, hash, key);
+            }
+            return key.equals(stored) ? array[i + 1] : NOT_FOUND;
+        }
+
+        @Override
+        Object findLong(int shift, int hash, long key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int i = index(bit);
+            Object stored = array[i];
+            if (stored == null) {
+                return ((Node) array[i + 1]).findLong(shift + BITS, hash, key);
+            }
+            return isLong(stored, key) ? array[i + 1] : NOT_FOUND;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = index(bit);
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, inserted(array, i, key, value));
+            }
+
+            Object stored = array[i];
+            if (stored == null) {
+                Node child = (Node) array[i + 1];
+                Node next = child.put(shift + BITS, hash, key, value, added);
+                return next == child ? this : new BitmapNode(bitmap, with(array, i + 1, next));
+            }
+            if (key.equals(stored)) {
+                return array[i + 1] == value ? this : new BitmapNode(bitmap, with(array, i + 1, value));
+            }
+
+            // Two keys share this slot; push both down a level
+            added[0] = true;
+            Node child = pair(shift + BITS, hash(stored.hashCode()), stored, array[i + 1], hash, key, value);
+            Object[] next = with(array, i, null);
+            next[i + 1] = child;
+            return new BitmapNode(bitmap, next);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = index(bit);
+            Object stored = array[i];
+            if (stored == null) {
+                Node child = (Node) array[i + 1];
+                Node next = child.remove(shift + BITS, hash, key);
+                if (next == child) {
+                    return this;
+                }
+                if (next != null) {
+                    return new BitmapNode(bitmap, with(array, i + 1, next));
+                }
+            } else if (!key.equals(stored)) {
+                return this;
+            }
+            return bitmap == bit ? null : new BitmapNode(bitmap & ~bit, removed(array, i));
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Node holding keys whose hashes are equal, as key and value pairs.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private final Object[] array;
+
+        /**
+         * Constructor for CollisionNode.
+         *
+         * @param hash The spread hash shared by the keys
+         * @param array The pairs
+         */
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return array[i + 1];
+                }
+            }
+            return NOT_FOUND;
+        }
+
+        @Override
+        Object findLong(int shift, int hash, long key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (isLong(array[i], key)) {
+                    return array[i + 1];
+                }
+            }
+            return NOT_FOUND;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // A key with another hash reached this node; route on the next bits
+                Node parent = new BitmapNode(1 << ((this.hash >>> shift) & MASK), new Object[] {null, this});
+                return parent.put(shift, hash, key, value, added);
+            }
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return array[i + 1] == value ? this : new CollisionNode(hash, with(array, i + 1, value));
+                }
+            }
+            added[0] = true;
+            return new CollisionNode(hash, inserted(array, array.length, key, value));
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return array.length == 2 ? null : new CollisionNode(this.hash, removed(array, i));
+                }
+            }
+            return this;
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+}
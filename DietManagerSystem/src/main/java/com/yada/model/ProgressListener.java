@@ -0,0 +1,14 @@
+package com.yada.model;
+
+/**
+ * Receives progress updates from long-running catalog operations.
+ */
+public interface ProgressListener {
+    /**
+     * Report progress.
+     * 
+     * @param completed The number of items completed so far
+     * @param total The total number of items, or -1 if unknown
+     */
+    void progress(long completed, long total);
+}
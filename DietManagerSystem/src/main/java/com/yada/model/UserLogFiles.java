@@ -0,0 +1,467 @@
+package com.yada.model;
+
+import com.yada.util.PersistenceScheduler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Log storage of one user: one segment file per month, e.g.
+ * database/logs/alice/2025-04.log, plus a write-ahead log of the changes
+ * made since the segments were written.
+ *
+ * Changes are appended to the WAL with group commit on the persistence
+ * scheduler. Once the WAL holds COMPACTION_THRESHOLD records, only the
+ * months it touched are rewritten and a new WAL is started, so a save
+ * never touches other months or other users.
+ *
+ * Each segment and the WAL start with "#generation=N". Compaction writes
+ * the changed segments with the next generation before starting the WAL
+ * of that generation, so WAL records for a segment of a newer generation
+ * than the WAL are in that segment already and are not replayed.
+ */
+class UserLogFiles {
+    static final String GENERATION_HEADER = "#generation=";
+    static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * Number of WAL records after which the changed months are compacted.
+     */
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    private static final String WAL_NAME = "journal.wal";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final File directory;
+
+    // Generation of each segment file
+    private final Map<YearMonth, Integer> segmentGenerations = new HashMap<>();
+    private int walGeneration;
+
+    // Months changed since the last compaction, and the WAL records since then
+    private final Set<YearMonth> dirtyMonths = new HashSet<>();
+    private int walRecords;
+    private boolean interrupted;
+
+    // Records and compactions not yet written, in order, and whether a batch
+    // of them is being written; guarded by pendingRecords
+    private final List<Object> pendingRecords = new ArrayList<>();
+    private boolean writing;
+
+    // Used on the persistence scheduler only; open while a batch is written
+    private FileChannel wal;
+    private boolean walCurrent;
+
+    /**
+     * Constructor for UserLogFiles.
+     *
+     * @param directory The user's log directory
+     */
+    UserLogFiles(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Load the user's entries from the segments, then replay the WAL.
+     *
+     * @return The entries by date
+     */
+    Map<LocalDate, List<LogEntry>> load() {
+        Map<LocalDate, List<LogEntry>> entries = new HashMap<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                YearMonth month = YearMonth.parse(file.getName().substring(0,
+                        file.getName().length() - SEGMENT_SUFFIX.length()));
+                segmentGenerations.put(month, readSegment(file, entries));
+                walGeneration = Math.max(walGeneration, segmentGenerations.get(month));
+            }
+        }
+
+        walRecords = replayWal(entries);
+        if (walRecords >= COMPACTION_THRESHOLD || interrupted) {
+            compact(entries);
+        }
+        return entries;
+    }
+
+    /**
+     * Read one segment.
+     *
+     * @param file The segment file
+     * @param entries The entries to add to
+     * @return The generation of the segment
+     */
+    private static int readSegment(File file, Map<LocalDate, List<LogEntry>> entries) {
+        int generation = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(GENERATION_HEADER)) {
+                    generation = Integer.parseInt(line.substring(GENERATION_HEADER.length()));
+                    continue;
+                }
+                String[] parts = line.split("\\|");
+                if (parts.length >= 4) {
+                    add(entries, LocalDate.parse(parts[0], DATE_FORMATTER), parts[1],
+                            Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error loading log segment " + file + ": " + e.getMessage());
+        }
+        return generation;
+    }
+
+    /**
+     * Replay the WAL records for segments that do not contain them yet.
+     * A torn last record from a crash is skipped, and an interrupted
+     * compaction is noted to be run again.
+     *
+     * @param entries The entries to apply the records to
+     * @return The number of records in the WAL
+     */
+    private int replayWal(Map<LocalDate, List<LogEntry>> entries) {
+        File file = new File(directory, WAL_NAME);
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int records = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            int generation = line != null && line.startsWith(GENERATION_HEADER)
+                    ? Integer.parseInt(line.substring(GENERATION_HEADER.length())) : 0;
+            // An older WAL than some segment is left behind by a compaction that
+            // crashed; its records for segments not yet rewritten still count
+            interrupted = generation < walGeneration;
+            walGeneration = Math.max(walGeneration, generation);
+            walCurrent = true;
+            for (; line != null; line = reader.readLine()) {
+                try {
+                    String[] parts = line.split("\\|");
+                    if (parts.length < 2 || line.startsWith(GENERATION_HEADER)) {
+                        continue;
+                    }
+                    LocalDate date = LocalDate.parse(parts[1], DATE_FORMATTER);
+                    YearMonth month = YearMonth.from(date);
+                    records++;
+                    dirtyMonths.add(month);
+                    if (segmentGenerations.getOrDefault(month, 0) <= generation) {
+                        applyRecord(entries, date, parts);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Skipping log record " + line + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error loading log journal: " + e.getMessage());
+        }
+        return records;
+    }
+
+    /**
+     * Apply one WAL record.
+     *
+     * @param entries The entries
+     * @param date The date of the record
+     * @param parts The fields of the record
+     */
+    private static void applyRecord(Map<LocalDate, List<LogEntry>> entries, LocalDate date, String[] parts) {
+        if (parts[0].equals("ADD") && parts.length >= 5) {
+            add(entries, date, parts[2], Double.parseDouble(parts[3]), Double.parseDouble(parts[4]));
+        } else if (parts[0].equals("REMOVE") && parts.length >= 3) {
+            List<LogEntry> list = entries.get(date);
+            int index = Integer.parseInt(parts[2]);
+            if (list != null && index < list.size()) {
+                list.remove(index);
+            }
+        } else if (parts[0].equals("CLEAR")) {
+            entries.remove(date);
+        }
+    }
+
+    /**
+     * Add a logged food read back from disk.
+     *
+     * @param entries The entries
+     * @param date The date
+     * @param foodId The food identifier
+     * @param servings The number of servings
+     * @param calories The calories of the entry when it was logged
+     */
+    private static void add(Map<LocalDate, List<LogEntry>> entries, LocalDate date, String foodId,
+            double servings, double calories) {
+        LogEntry entry = new LogEntry(new DailyLog.PlaceholderFood(foodId, calories / servings), servings);
+        entries.computeIfAbsent(date, k -> new ArrayList<>()).add(entry);
+    }
+
+    /**
+     * Record that an entry was added.
+     *
+     * @param date The date
+     * @param entry The entry
+     * @param entries The user's current entries
+     */
+    void recordAdd(LocalDate date, LogEntry entry, Map<LocalDate, List<LogEntry>> entries) {
+        record("ADD|" + date.format(DATE_FORMATTER) + "|"
+                + entry.getFood().getIdentifier() + "|"
+                + entry.getServings() + "|"
+                + entry.getCalories(), date, entries);
+    }
+
+    /**
+     * Record that an entry was removed.
+     *
+     * @param date The date
+     * @param index The position the entry had in the date's list
+     * @param entries The user's current entries
+     */
+    void recordRemove(LocalDate date, int index, Map<LocalDate, List<LogEntry>> entries) {
+        record("REMOVE|" + date.format(DATE_FORMATTER) + "|" + index, date, entries);
+    }
+
+    /**
+     * Record that all entries of a date were removed.
+     *
+     * @param date The date
+     * @param entries The user's current entries
+     */
+    void recordClear(LocalDate date, Map<LocalDate, List<LogEntry>> entries) {
+        record("CLEAR|" + date.format(DATE_FORMATTER), date, entries);
+    }
+
+    /**
+     * Queue a WAL record, and a compaction once the WAL is long enough.
+     *
+     * @param record The record line
+     * @param date The date of the record
+     * @param entries The user's current entries
+     */
+    private void record(String record, LocalDate date, Map<LocalDate, List<LogEntry>> entries) {
+        synchronized (pendingRecords) {
+            pendingRecords.add(record);
+        }
+        dirtyMonths.add(YearMonth.from(date));
+        if (++walRecords >= COMPACTION_THRESHOLD) {
+            compact(entries);
+        }
+        save();
+    }
+
+    /**
+     * Start writing the queued records if there are any.
+     */
+    void save() {
+        synchronized (pendingRecords) {
+            if (pendingRecords.isEmpty()) {
+                return;
+            }
+        }
+        PersistenceScheduler.getInstance().schedule(new File(directory, WAL_NAME).getPath(), this::writePending);
+    }
+
+    /**
+     * Check whether every recorded change has been written. The user's
+     * entries can then be dropped from memory and loaded again later.
+     *
+     * @return true if nothing is queued or being written
+     */
+    boolean isPersisted() {
+        synchronized (pendingRecords) {
+            return pendingRecords.isEmpty() && !writing;
+        }
+    }
+
+    /**
+     * Queue a rewrite of the changed months. Their lines are captured now,
+     * so the compaction holds exactly the records queued before it.
+     *
+     * @param entries The user's current entries
+     */
+    private void compact(Map<LocalDate, List<LogEntry>> entries) {
+        Map<YearMonth, List<String>> segments = new HashMap<>();
+        for (YearMonth month : dirtyMonths) {
+            segments.put(month, new ArrayList<>());
+        }
+        for (Map.Entry<LocalDate, List<LogEntry>> dateEntry : entries.entrySet()) {
+            List<String> lines = segments.get(YearMonth.from(dateEntry.getKey()));
+            if (lines == null) {
+                continue;
+            }
+            String date = dateEntry.getKey().format(DATE_FORMATTER);
+            for (LogEntry entry : dateEntry.getValue()) {
+                lines.add(date + "|" + entry.getFood().getIdentifier() + "|"
+                        + entry.getServings() + "|"
+                        + entry.getCalories());
+            }
+        }
+        synchronized (pendingRecords) {
+            pendingRecords.add(new Compaction(segments));
+        }
+        dirtyMonths.clear();
+        walRecords = 0;
+        save();
+    }
+
+    /**
+     * Write the queued records to the WAL with one fsync, running queued
+     * compactions in order. Runs on the persistence scheduler, which never
+     * runs two writes of the WAL at once. The WAL is closed afterwards, so
+     * a user whose changes are written holds no open file.
+     *
+     * @throws IOException if the WAL or a segment cannot be written
+     */
+    private void writePending() throws IOException {
+        List<Object> batch;
+        synchronized (pendingRecords) {
+            batch = new ArrayList<>(pendingRecords);
+            pendingRecords.clear();
+            writing = true;
+        }
+
+        try {
+            StringBuilder records = new StringBuilder();
+            for (Object pending : batch) {
+                if (pending instanceof Compaction) {
+                    appendToWal(records);
+                    records.setLength(0);
+                    writeSegments(((Compaction) pending).segments);
+                } else {
+                    records.append(pending).append(System.lineSeparator());
+                }
+            }
+            appendToWal(records);
+        } finally {
+            if (wal != null) {
+                wal.close();
+                wal = null;
+            }
+            synchronized (pendingRecords) {
+                writing = false;
+            }
+        }
+    }
+
+    /**
+     * Append records to the WAL and force them to disk. Starts a new WAL
+     * for the current generation if needed.
+     *
+     * @param records The record lines
+     * @throws IOException if the WAL cannot be written
+     */
+    private void appendToWal(StringBuilder records) throws IOException {
+        if (records.length() == 0) {
+            return;
+        }
+        if (wal == null) {
+            directory.mkdirs();
+            File file = new File(directory, WAL_NAME);
+            if (walCurrent) {
+                wal = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            } else {
+                wal = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                records.insert(0, GENERATION_HEADER + walGeneration + System.lineSeparator());
+                walCurrent = true;
+            }
+        }
+
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(records.toString());
+        while (bytes.hasRemaining()) {
+            wal.write(bytes);
+        }
+        wal.force(false);
+    }
+
+    /**
+     * Write the changed segments with the next generation, replacing each
+     * atomically. Once they are durable, the WAL is replaced with an empty
+     * one of the new generation, so that a restart finds no old WAL to
+     * replay or compact again.
+     *
+     * @param segments The lines of each changed month
+     * @throws IOException if a segment or the WAL cannot be written
+     */
+    private void writeSegments(Map<YearMonth, List<String>> segments) throws IOException {
+        directory.mkdirs();
+        int generation = walGeneration + 1;
+        for (Map.Entry<YearMonth, List<String>> segment : segments.entrySet()) {
+            // A month without entries keeps an empty segment, so that the old WAL
+            // is not replayed into it after a crash
+            writeSegment(new File(directory, segment.getKey() + SEGMENT_SUFFIX), generation, segment.getValue());
+        }
+
+        walGeneration = generation;
+        if (wal != null) {
+            wal.close();
+            wal = null;
+        }
+        // Until this replacement the old WAL is still there, and a crash leaves
+        // it to be compacted again on the next load
+        walCurrent = false;
+        writeSegment(new File(directory, WAL_NAME), generation, Collections.emptyList());
+        walCurrent = true;
+    }
+
+    /**
+     * Write one segment file, or an empty WAL, replacing it atomically.
+     *
+     * @param file The segment file
+     * @param generation The generation of the segment
+     * @param lines The log lines
+     * @throws IOException if the file cannot be written
+     */
+    static void writeSegment(File file, int generation, List<String> lines) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp);
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            writer.write(GENERATION_HEADER + generation);
+            writer.newLine();
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * A queued compaction, with the lines of the months it rewrites.
+     */
+    private static class Compaction {
+        private final Map<YearMonth, List<String>> segments;
+
+        /**
+         * Constructor for Compaction.
+         *
+         * @param segments The lines of each month
+         */
+        public Compaction(Map<YearMonth, List<String>> segments) {
+            this.segments = segments;
+        }
+    }
+}
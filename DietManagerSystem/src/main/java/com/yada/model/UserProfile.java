@@ -1,5 +1,7 @@
 package com.yada.model;
 
+import com.yada.util.PersistenceScheduler;
+
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -137,7 +139,8 @@ public class UserProfile {
     }
     
     /**
-     * Save profile to the profile file.
+     * Save profile to the profile file. The values are captured now and
+     * written on the persistence scheduler.
      */
     public void save() {
         if (username == null) {
@@ -145,28 +148,28 @@ public class UserProfile {
             return;
         }
         
-        try {
+        Properties properties = new Properties();
+        properties.setProperty("gender", gender);
+        properties.setProperty("height", String.valueOf(height));
+        properties.setProperty("weight", String.valueOf(weight));
+        properties.setProperty("age", String.valueOf(age));
+        properties.setProperty("activityLevel", activityLevel);
+        properties.setProperty("calorieCalculationMethod", calorieCalculationMethod);
+        
+        String user = username;
+        File profileFile = getUserProfileFile();
+        PersistenceScheduler.getInstance().schedule(profileFile.getPath(), () -> {
             // Create database directory if it doesn't exist
             File directory = new File(PROFILES_DIRECTORY);
             if (!directory.exists()) {
                 directory.mkdirs();
             }
             
-            Properties properties = new Properties();
-            properties.setProperty("gender", gender);
-            properties.setProperty("height", String.valueOf(height));
-            properties.setProperty("weight", String.valueOf(weight));
-            properties.setProperty("age", String.valueOf(age));
-            properties.setProperty("activityLevel", activityLevel);
-            properties.setProperty("calorieCalculationMethod", calorieCalculationMethod);
-            
             // Always save to the user-specific profile file
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(getUserProfileFile()))) {
-                properties.store(writer, "YADA User Profile for " + username);
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(profileFile))) {
+                properties.store(writer, "YADA User Profile for " + user);
             }
-        } catch (IOException e) {
-            System.err.println("Error saving profile for " + username + ": " + e.getMessage());
-        }
+        });
     }
     
     /**
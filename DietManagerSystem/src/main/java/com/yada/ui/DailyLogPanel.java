@@ -20,6 +20,8 @@ import java.util.List;
  * Panel for viewing and managing daily food log.
  */
 public class DailyLogPanel extends JPanel {
+    private static final int MAX_SUGGESTIONS = 50;
+    
     private DietManager dietManager;
     private MainWindow mainWindow;
     
@@ -201,9 +203,10 @@ public class DailyLogPanel extends JPanel {
             });
     
             // Update summary with zeros
+            double targetCalories = dietManager.getTargetCalories();
             caloriesConsumedLabel.setText("0.0");
-            targetCaloriesLabel.setText(String.format("%.1f", dietManager.getTargetCalories()));
-            remainingCaloriesLabel.setText(String.format("%.1f", dietManager.getTargetCalories()));
+            targetCaloriesLabel.setText(String.format("%.1f", targetCalories));
+            remainingCaloriesLabel.setText(String.format("%.1f", targetCalories));
             remainingCaloriesLabel.setForeground(Color.GREEN.darker());
     
             // Disable remove button when log is empty
@@ -239,10 +242,10 @@ public class DailyLogPanel extends JPanel {
                 });
             }
     
-            // Update summary with real values
+            // Update summary with real values, read from the running totals once
             double caloriesConsumed = dietManager.getCaloriesConsumed(currentDate);
             double targetCalories = dietManager.getTargetCalories();
-            double remainingCalories = dietManager.getRemainingCalories(currentDate);
+            double remainingCalories = targetCalories - caloriesConsumed;
     
             caloriesConsumedLabel.setText(String.format("%.1f", caloriesConsumed));
             targetCaloriesLabel.setText(String.format("%.1f", targetCalories));
@@ -328,12 +331,13 @@ public class DailyLogPanel extends JPanel {
         // Add search functionality
         searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
             private void filterFoods() {
-                String searchText = searchField.getText().toLowerCase();
+                String searchText = searchField.getText().trim();
+                List<Food> matches = searchText.isEmpty()
+                        ? allFoods
+                        : dietManager.getFoodDatabase().suggest(searchText, MAX_SUGGESTIONS);
                 foodModel.removeAllElements();
-                for (Food food : allFoods) {
-                    if (food.getIdentifier().toLowerCase().contains(searchText)) {
-                        foodModel.addElement(food);
-                    }
+                for (Food food : matches) {
+                    foodModel.addElement(food);
                 }
             }
     
@@ -2,6 +2,7 @@ package com.yada.ui;
 
 import com.yada.DietManager;
 import com.yada.model.Food;
+import com.yada.model.FoodDatabase;
 import com.yada.ui.util.RoundButton;
 import com.yada.ui.util.RoundPanel;
 import com.yada.ui.util.RoundTextField;
@@ -20,6 +21,7 @@ import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.JLabel;
 
 import com.yada.model.BasicFood;
+import com.yada.model.CompositeFood;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -27,6 +29,8 @@ import java.util.stream.Collectors;
  * Panel for displaying and manipulating foods.
  */
 public class FoodPanel extends JPanel {
+    private static final int MAX_SEARCH_RESULTS = 500;
+    
     private DietManager dietManager;
     private MainWindow mainWindow;
     
@@ -191,10 +195,12 @@ public class FoodPanel extends JPanel {
                 String foodName = (String) tableModel.getValueAt(row, 0);
                 Food food = dietManager.getFoodDatabase().getFoodByIdentifier(foodName);
                 if (food instanceof BasicFood) {
-                    showNutrientDialog((BasicFood) food);
+                    showNutrientDialog(food, ((BasicFood) food).getAllNutrients());
+                } else if (food instanceof CompositeFood) {
+                    showNutrientDialog(food, ((CompositeFood) food).getAllNutrients());
                 } else {
                     JOptionPane.showMessageDialog(this,
-                            "Nutrition information is only available for basic foods.",
+                            "Nutrition information is only available for basic and composite foods.",
                             "Info", JOptionPane.INFORMATION_MESSAGE);
                 }
             }
@@ -237,7 +243,11 @@ public class FoodPanel extends JPanel {
     public void refreshFoods(String keywords) {
         List<Food> foods;
         if (keywords != null && !keywords.isEmpty()) {
-            foods = dietManager.searchFoods(keywords);
+            foods = dietManager.searchFoods(keywords, 0, MAX_SEARCH_RESULTS);
+            if (foods.isEmpty()) {
+                // Fall back to typo-tolerant matching, e.g. "chedar" for "cheddar"
+                foods = dietManager.fuzzySearchFoods(keywords, FoodDatabase.MAX_FUZZY_DISTANCE, MAX_SEARCH_RESULTS);
+            }
         } else {
             foods = dietManager.getFoodDatabase().getAllFoods();
         }
@@ -439,14 +449,13 @@ public class FoodPanel extends JPanel {
     }
 
     // Add new method:
-    private void showNutrientDialog(BasicFood food) {
+    private void showNutrientDialog(Food food, Map<String, Double> nutrients) {
         JDialog dialog = new JDialog(mainWindow, "Nutrition Facts: " + food.getIdentifier(), true);
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBorder(new EmptyBorder(10, 10, 10, 10));
 
         // Create table for nutrients
         String[] columns = {"Nutrient", "Amount per Serving"};
-        Map<String, Double> nutrients = food.getAllNutrients();
         Object[][] data = nutrients.entrySet().stream()
             .map(e -> new Object[]{e.getKey(), e.getValue()})
             .toArray(Object[][]::new);
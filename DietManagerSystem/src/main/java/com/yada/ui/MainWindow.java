@@ -3,6 +3,7 @@ package com.yada.ui;
 import com.yada.DietManager;
 import com.yada.model.UserProfile;
 import com.yada.user.User;
+import com.yada.util.PersistenceScheduler;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -159,10 +160,22 @@ public class MainWindow extends JFrame {
                 dietManager.getDailyLog().save();
                 dietManager.getUserProfile().save();
                 
-                JOptionPane.showMessageDialog(MainWindow.this, 
-                        "All data saved successfully.", 
-                        "Save", 
-                        JOptionPane.INFORMATION_MESSAGE);
+                // Wait for the writes off the event thread, then confirm
+                new SwingWorker<Void, Void>() {
+                    @Override
+                    protected Void doInBackground() {
+                        PersistenceScheduler.getInstance().flush();
+                        return null;
+                    }
+                    
+                    @Override
+                    protected void done() {
+                        JOptionPane.showMessageDialog(MainWindow.this, 
+                                "All data saved successfully.", 
+                                "Save", 
+                                JOptionPane.INFORMATION_MESSAGE);
+                    }
+                }.execute();
             }
         });
         
@@ -1,12 +1,16 @@
 package com.yada.user;
 
+import com.yada.util.PersistenceScheduler;
+
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -49,24 +53,24 @@ public class UserManager {
     }
     
     /**
-     * Save users to the users file.
+     * Save users to the users file. The users are captured now and written
+     * on the persistence scheduler.
      */
     private void saveUsers() {
-        try {
+        List<User> snapshot = new ArrayList<>(users.values());
+        PersistenceScheduler.getInstance().schedule(USERS_FILE, () -> {
             File directory = new File("database");
             if (!directory.exists()) {
                 directory.mkdirs();
             }
             
             try (BufferedWriter writer = new BufferedWriter(new FileWriter(USERS_FILE))) {
-                for (User user : users.values()) {
+                for (User user : snapshot) {
                     writer.write(user.getUsername() + "|" + user.getEncryptedPassword());
                     writer.newLine();
                 }
             }
-        } catch (IOException e) {
-            System.err.println("Error saving users: " + e.getMessage());
-        }
+        });
     }
     
     /**
@@ -1,23 +1,43 @@
-// package com.yada.util;
+package com.yada.util;
 
-// import java.util.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
-// public class AdapterLoader {
-//     private final Map<String, FoodDataAdapter> adapters = new HashMap<>();
+/**
+ * Registry of the adapters for the supported food source formats.
+ */
+public class AdapterLoader {
+    private final Map<String, FoodDataAdapter> adapters = new LinkedHashMap<>();
     
-//     public AdapterLoader() {
-//         registerAdapter(new McDonaldsAdapter());
-//         registerAdapter(new USDAAdapter());
-//     }
+    /**
+     * Constructor for AdapterLoader. Registers the built-in adapters.
+     */
+    public AdapterLoader() {
+        registerAdapter(new CsvFoodAdapter());
+        registerAdapter(new JsonLinesFoodAdapter());
+    }
     
-//     public void registerAdapter(FoodDataAdapter adapter) {
-//         adapters.put(adapter.getClass().getSimpleName(), adapter);
-//     }
+    /**
+     * Register an adapter, replacing one of the same class.
+     * 
+     * @param adapter The adapter
+     */
+    public void registerAdapter(FoodDataAdapter adapter) {
+        adapters.put(adapter.getClass().getSimpleName(), adapter);
+    }
     
-//     public FoodDataAdapter getAdapter(String source) {
-//         return adapters.values().stream()
-//             .filter(a -> a.supports(source))
-//             .findFirst()
-//             .orElseThrow(() -> new NoSuchElementException("No adapter for " + source));
-//     }
-// }
\ No newline at end of file
+    /**
+     * Get the adapter for a source.
+     * 
+     * @param source The source file name
+     * @return The first registered adapter that supports the source
+     * @throws NoSuchElementException if no adapter supports the source
+     */
+    public FoodDataAdapter getAdapter(String source) {
+        return adapters.values().stream()
+            .filter(a -> a.supports(source))
+            .findFirst()
+            .orElseThrow(() -> new NoSuchElementException("No adapter for " + source));
+    }
+}
@@ -0,0 +1,166 @@
+package com.yada.util;
+
+import com.yada.model.BasicFood;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads basic foods from CSV files with a header line, e.g.
+ *
+ *   identifier,keywords,calories,protein,fat
+ *   Apple,fruit;red,95,0.5,0.3
+ *
+ * The identifier column may also be called "name", and keywords are
+ * separated by semicolons. Every column other than identifier, keywords
+ * and calories is a nutrient; empty cells are skipped. Fields may be
+ * quoted, with quotes inside doubled.
+ */
+public class CsvFoodAdapter implements FoodDataAdapter {
+    @Override
+    public boolean supports(String source) {
+        return source.toLowerCase(Locale.ROOT).endsWith(".csv");
+    }
+    
+    @Override
+    public boolean hasHeader() {
+        return true;
+    }
+    
+    @Override
+    public LineParser createParser(String header) throws FoodImportException {
+        List<String> columns = split(header);
+        int identifierColumn = -1;
+        int keywordsColumn = -1;
+        int caloriesColumn = -1;
+        for (int i = 0; i < columns.size(); i++) {
+            String column = columns.get(i).trim().toLowerCase(Locale.ROOT);
+            columns.set(i, column);
+            if (column.equals("identifier") || column.equals("name")) {
+                identifierColumn = i;
+            } else if (column.equals("keywords")) {
+                keywordsColumn = i;
+            } else if (column.equals("calories")) {
+                caloriesColumn = i;
+            }
+        }
+        if (identifierColumn < 0 || caloriesColumn < 0) {
+            throw new FoodImportException("CSV header needs identifier and calories columns: " + header);
+        }
+        return new Parser(columns.toArray(new String[0]), identifierColumn, keywordsColumn, caloriesColumn);
+    }
+    
+    /**
+     * Split a CSV line into fields.
+     * 
+     * @param line The line
+     * @return The fields, unquoted
+     */
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+    
+    /**
+     * Parses the records of a file with a given header.
+     */
+    private static class Parser implements LineParser {
+        private final String[] columns;
+        private final int identifierColumn;
+        private final int keywordsColumn;
+        private final int caloriesColumn;
+        
+        /**
+         * Constructor for Parser.
+         * 
+         * @param columns The lowercased column names
+         * @param identifierColumn The position of the identifier column
+         * @param keywordsColumn The position of the keywords column, or -1
+         * @param caloriesColumn The position of the calories column
+         */
+        public Parser(String[] columns, int identifierColumn, int keywordsColumn, int caloriesColumn) {
+            this.columns = columns;
+            this.identifierColumn = identifierColumn;
+            this.keywordsColumn = keywordsColumn;
+            this.caloriesColumn = caloriesColumn;
+        }
+        
+        @Override
+        public BasicFood parse(String line) throws FoodImportException {
+            if (line.trim().isEmpty()) {
+                return null;
+            }
+            List<String> fields = split(line);
+            if (fields.size() > columns.length) {
+                throw new FoodImportException("Expected " + columns.length + " fields but found " + fields.size());
+            }
+            
+            String identifier = field(fields, identifierColumn);
+            String[] keywords = new String[0];
+            if (keywordsColumn >= 0 && !field(fields, keywordsColumn).isEmpty()) {
+                keywords = field(fields, keywordsColumn).split("\\s*;\\s*");
+            }
+            BasicFood food = new BasicFood(identifier, keywords, number(fields, caloriesColumn));
+            
+            for (int i = 0; i < fields.size(); i++) {
+                if (i != identifierColumn && i != keywordsColumn && i != caloriesColumn
+                        && !field(fields, i).isEmpty()) {
+                    food.addNutrient(columns[i], number(fields, i));
+                }
+            }
+            return food;
+        }
+        
+        /**
+         * Get a trimmed field.
+         * 
+         * @param fields The fields of the line
+         * @param column The column
+         * @return The field, or an empty string if the line is short
+         */
+        private static String field(List<String> fields, int column) {
+            return column < fields.size() ? fields.get(column).trim() : "";
+        }
+        
+        /**
+         * Get a numeric field.
+         * 
+         * @param fields The fields of the line
+         * @param column The column
+         * @return The number
+         * @throws FoodImportException if the field is not a number
+         */
+        private double number(List<String> fields, int column) throws FoodImportException {
+            String value = field(fields, column);
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new FoodImportException("Column " + columns[column] + " is not a number: " + value);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.yada.util;
+
+import com.yada.model.BasicFood;
+
+/**
+ * Adapter that reads basic foods from one format of local source file.
+ * Files are read line by line, so an adapter only ever sees one record
+ * at a time.
+ */
+public interface FoodDataAdapter {
+    /**
+     * Check whether this adapter reads a source.
+     * 
+     * @param source The source file name
+     * @return true if this adapter reads the source
+     */
+    boolean supports(String source);
+    
+    /**
+     * Check whether the first line of a file is a header rather than a record.
+     * 
+     * @return true if files start with a header
+     */
+    boolean hasHeader();
+    
+    /**
+     * Create a parser for the records of one file.
+     * 
+     * @param header The first line of the file if hasHeader is true, otherwise null
+     * @return The parser
+     * @throws FoodImportException if the header is not valid
+     */
+    LineParser createParser(String header) throws FoodImportException;
+    
+    /**
+     * Parses the records of one file. Lines are parsed on several threads
+     * at once, so a parser must not change its own state.
+     */
+    interface LineParser {
+        /**
+         * Parse one line.
+         * 
+         * @param line The line
+         * @return The food, or null if the line holds no record
+         * @throws FoodImportException if the line is not a valid record
+         */
+        BasicFood parse(String line) throws FoodImportException;
+    }
+}
@@ -0,0 +1,25 @@
+package com.yada.util;
+
+/**
+ * Exception thrown when food data cannot be imported.
+ */
+public class FoodImportException extends Exception {
+    /**
+     * Constructor for FoodImportException.
+     * 
+     * @param message The error message
+     */
+    public FoodImportException(String message) {
+        super(message);
+    }
+    
+    /**
+     * Constructor for FoodImportException.
+     * 
+     * @param message The error message
+     * @param cause The underlying error
+     */
+    public FoodImportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
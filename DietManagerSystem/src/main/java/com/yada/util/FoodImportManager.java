@@ -0,0 +1,387 @@
+package com.yada.util;
+
+import com.yada.model.BasicFood;
+import com.yada.model.Food;
+import com.yada.model.FoodDatabase;
+import com.yada.model.ProgressListener;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Imports basic foods from local source files in bulk.
+ *
+ * The file is streamed in batches of lines. Batches are parsed in parallel
+ * on the common fork/join pool while the next ones are read, with a bounded
+ * number in flight, so memory holds the imported foods and a few batches of
+ * text rather than the whole file. Parsed batches are validated and
+ * deduplicated in file order, and all foods are added to the database in
+ * one bulk commit that rewrites the foods file once.
+ *
+ * Reference datasets split across a food table and a food-nutrient table
+ * are joined out of core by SpillingFoodJoin and committed the same way.
+ */
+public class FoodImportManager {
+    /**
+     * Number of lines parsed together.
+     */
+    private static final int BATCH_SIZE = 8192;
+    
+    /**
+     * Number of rejected lines reported individually.
+     */
+    private static final int MAX_REPORTED_ERRORS = 20;
+    
+    private final AdapterLoader adapterLoader;
+    
+    /**
+     * Constructor for FoodImportManager.
+     */
+    public FoodImportManager() {
+        this.adapterLoader = new AdapterLoader();
+    }
+    
+    /**
+     * Get the adapter registry, e.g. to register more formats.
+     * 
+     * @return The adapter loader
+     */
+    public AdapterLoader getAdapterLoader() {
+        return adapterLoader;
+    }
+    
+    /**
+     * Import the foods of a file into a database. Foods whose identifier is
+     * already in the database or earlier in the file are skipped, and lines
+     * that are not valid records are rejected and reported on stderr.
+     * 
+     * @param file The file to import, in a format chosen by its name
+     * @param database The database to add the foods to
+     * @param listener Receives the number of lines read after each batch, or null
+     * @return The counts of the import
+     * @throws FoodImportException if the file cannot be read or has no adapter
+     */
+    public ImportResult importFile(File file, FoodDatabase database, ProgressListener listener)
+            throws FoodImportException {
+        FoodDataAdapter adapter;
+        try {
+            adapter = adapterLoader.getAdapter(file.getName());
+        } catch (NoSuchElementException e) {
+            throw new FoodImportException(e.getMessage());
+        }
+        
+        long start = System.nanoTime();
+        ImportResult result = new ImportResult();
+        List<Food> imported = new ArrayList<>();
+        Set<String> identifiers = new HashSet<>();
+        int maxInFlight = Math.max(2, ForkJoinPool.getCommonPoolParallelism() * 2);
+        Deque<ForkJoinTask<Batch>> inFlight = new ArrayDeque<>();
+        
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            long lineNumber = 1;
+            FoodDataAdapter.LineParser parser;
+            if (adapter.hasHeader()) {
+                String header = reader.readLine();
+                if (header == null) {
+                    throw new FoodImportException("Empty file: " + file);
+                }
+                parser = adapter.createParser(header);
+                lineNumber++;
+            } else {
+                parser = adapter.createParser(null);
+            }
+            
+            List<String> lines = new ArrayList<>(BATCH_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+                if (lines.size() == BATCH_SIZE) {
+                    inFlight.add(ForkJoinPool.commonPool().submit(new Batch(parser, lines, lineNumber)));
+                    lineNumber += lines.size();
+                    lines = new ArrayList<>(BATCH_SIZE);
+                    if (inFlight.size() >= maxInFlight) {
+                        accept(inFlight.poll().join(), database, identifiers, imported, result, listener);
+                    }
+                }
+            }
+            if (!lines.isEmpty()) {
+                inFlight.add(ForkJoinPool.commonPool().submit(new Batch(parser, lines, lineNumber)));
+            }
+            while (!inFlight.isEmpty()) {
+                accept(inFlight.poll().join(), database, identifiers, imported, result, listener);
+            }
+        } catch (IOException e) {
+            throw new FoodImportException("Error reading " + file + ": " + e.getMessage(), e);
+        } finally {
+            for (ForkJoinTask<Batch> task : inFlight) {
+                task.cancel(false);
+            }
+        }
+        
+        commit(database, imported, result, start);
+        return result;
+    }
+    
+    /**
+     * Import a USDA FoodData Central style food table joined with its
+     * food-nutrient table, which may be larger than memory; see
+     * SpillingFoodJoin. Foods are validated and deduplicated as for
+     * importFile, and the joined tables count as the lines of the result.
+     * 
+     * @param foodFile The food table (fdc_id, description)
+     * @param foodNutrientFile The food-nutrient table (fdc_id, nutrient_id, amount)
+     * @param nutrientFile The nutrient table (id, name, unit_name), or null to
+     *                     name nutrients by id
+     * @param database The database to add the foods to
+     * @param listener Receives the number of food-nutrient rows partitioned,
+     *                 then joined out of the total, or null
+     * @return The counts of the import
+     * @throws FoodImportException if a table cannot be read or lacks a column
+     */
+    public ImportResult importUsda(File foodFile, File foodNutrientFile, File nutrientFile,
+            FoodDatabase database, ProgressListener listener) throws FoodImportException {
+        long start = System.nanoTime();
+        ImportResult result = new ImportResult();
+        List<Food> imported = new ArrayList<>();
+        Set<String> identifiers = new HashSet<>();
+        
+        SpillingFoodJoin join = new SpillingFoodJoin(foodFile, foodNutrientFile, nutrientFile);
+        join.run((food, error) -> accept(food, error, database, identifiers, imported, result), listener);
+        result.lines = join.getRows();
+        
+        commit(database, imported, result, start);
+        return result;
+    }
+    
+    /**
+     * Add the accepted foods to the database in one bulk commit, with one
+     * write of the foods file for the whole import, and wait for the write.
+     * 
+     * @param database The database
+     * @param imported The accepted foods
+     * @param result The counts to update
+     * @param start The start of the import, from System.nanoTime
+     */
+    private static void commit(FoodDatabase database, List<Food> imported, ImportResult result, long start) {
+        result.imported = database.addFoods(imported);
+        result.duplicates += imported.size() - result.imported;
+        PersistenceScheduler.getInstance().flush();
+        result.elapsedNanos = System.nanoTime() - start;
+    }
+    
+    /**
+     * Validate and deduplicate the foods of a parsed batch.
+     * 
+     * @param batch The parsed batch
+     * @param database The database imported into
+     * @param identifiers The identifiers accepted so far
+     * @param imported The foods accepted so far
+     * @param result The counts to update
+     * @param listener Receives the number of lines read, or null
+     */
+    private static void accept(Batch batch, FoodDatabase database, Set<String> identifiers,
+            List<Food> imported, ImportResult result, ProgressListener listener) {
+        for (int i = 0; i < batch.lines.size(); i++) {
+            String error = batch.errors[i];
+            accept(batch.foods[i], error == null ? null : "line " + (batch.firstLine + i) + ": " + error,
+                database, identifiers, imported, result);
+        }
+        result.lines += batch.lines.size();
+        if (listener != null) {
+            listener.progress(result.lines, -1);
+        }
+    }
+    
+    /**
+     * Validate and deduplicate one parsed food.
+     * 
+     * @param food The food, or null if nothing was parsed
+     * @param error The reason the record was rejected by its parser, or null
+     * @param database The database imported into
+     * @param identifiers The identifiers accepted so far
+     * @param imported The foods accepted so far
+     * @param result The counts to update
+     */
+    private static void accept(BasicFood food, String error, FoodDatabase database, Set<String> identifiers,
+            List<Food> imported, ImportResult result) {
+        if (error == null && food != null) {
+            error = validate(food);
+            if (error != null) {
+                error = food.getIdentifier() + ": " + error;
+            }
+        }
+        
+        if (error != null) {
+            if (result.rejected++ < MAX_REPORTED_ERRORS) {
+                System.err.println("Skipping " + error);
+            }
+        } else if (food != null) {
+            if (database.getFoodByIdentifier(food.getIdentifier()) != null
+                    || !identifiers.add(food.getIdentifier())) {
+                result.duplicates++;
+            } else {
+                imported.add(food);
+            }
+        }
+    }
+    
+    /**
+     * Check that a food can be stored in the foods file, whose fields are
+     * separated by '|', lists by ',', and pairs by ':' or '='.
+     * 
+     * @param food The food
+     * @return The problem, or null if the food is valid
+     */
+    static String validate(BasicFood food) {
+        String identifier = food.getIdentifier();
+        if (identifier.isEmpty() || containsAny(identifier, "|,:=\n")) {
+            return "Invalid identifier: " + identifier;
+        }
+        for (String keyword : food.getKeywords()) {
+            if (keyword.isEmpty() || containsAny(keyword, "|,\n")) {
+                return "Invalid keyword: " + keyword;
+            }
+        }
+        double calories = food.getCaloriesPerServing();
+        if (Double.isNaN(calories) || Double.isInfinite(calories) || calories < 0) {
+            return "Invalid calories: " + calories;
+        }
+        for (Map.Entry<String, Double> nutrient : food.getAllNutrients().entrySet()) {
+            if (nutrient.getKey().isEmpty() || containsAny(nutrient.getKey(), "|,:=\n")
+                    || Double.isNaN(nutrient.getValue()) || Double.isInfinite(nutrient.getValue())) {
+                return "Invalid nutrient: " + nutrient.getKey() + "=" + nutrient.getValue();
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Check whether a string contains any of some characters.
+     * 
+     * @param value The string
+     * @param characters The characters
+     * @return true if one of the characters occurs
+     */
+    private static boolean containsAny(String value, String characters) {
+        for (int i = 0; i < characters.length(); i++) {
+            if (value.indexOf(characters.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * A batch of lines, parsed on the fork/join pool.
+     */
+    private static class Batch implements Callable<Batch> {
+        private final FoodDataAdapter.LineParser parser;
+        private final List<String> lines;
+        private final long firstLine;
+        private final BasicFood[] foods;
+        private final String[] errors;
+        
+        /**
+         * Constructor for Batch.
+         * 
+         * @param parser The parser of the file
+         * @param lines The lines
+         * @param firstLine The line number of the first line
+         */
+        public Batch(FoodDataAdapter.LineParser parser, List<String> lines, long firstLine) {
+            this.parser = parser;
+            this.lines = lines;
+            this.firstLine = firstLine;
+            this.foods = new BasicFood[lines.size()];
+            this.errors = new String[lines.size()];
+        }
+        
+        @Override
+        public Batch call() {
+            for (int i = 0; i < lines.size(); i++) {
+                try {
+                    foods[i] = parser.parse(lines.get(i));
+                } catch (FoodImportException | RuntimeException e) {
+                    errors[i] = e.getMessage();
+                }
+            }
+            return this;
+        }
+    }
+    
+    /**
+     * Counts of one import.
+     */
+    public static class ImportResult {
+        private long lines;
+        private int imported;
+        private long duplicates;
+        private long rejected;
+        private long elapsedNanos;
+        
+        /**
+         * Get the number of lines read, excluding a header.
+         * 
+         * @return The number of lines
+         */
+        public long getLines() {
+            return lines;
+        }
+        
+        /**
+         * Get the number of foods added to the database.
+         * 
+         * @return The number of foods
+         */
+        public int getImported() {
+            return imported;
+        }
+        
+        /**
+         * Get the number of foods skipped because their identifier was taken.
+         * 
+         * @return The number of foods
+         */
+        public long getDuplicates() {
+            return duplicates;
+        }
+        
+        /**
+         * Get the number of lines rejected as invalid.
+         * 
+         * @return The number of lines
+         */
+        public long getRejected() {
+            return rejected;
+        }
+        
+        /**
+         * Get the number of lines read per second.
+         * 
+         * @return The rate
+         */
+        public double getLinesPerSecond() {
+            return elapsedNanos == 0 ? 0 : lines * 1e9 / elapsedNanos;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%d imported, %d duplicates, %d rejected of %d lines (%.0f lines/s)",
+                imported, duplicates, rejected, lines, getLinesPerSecond());
+        }
+    }
+}
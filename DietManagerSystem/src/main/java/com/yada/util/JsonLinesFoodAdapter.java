@@ -0,0 +1,316 @@
+package com.yada.util;
+
+import com.yada.model.BasicFood;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads basic foods from JSON lines files, one object per line, e.g.
+ *
+ *   {"identifier": "Apple", "keywords": ["fruit", "red"], "calories": 95,
+ *    "nutrients": {"protein": 0.5, "fat": 0.3}}
+ *
+ * The identifier may also be called "name", and keywords may be one string
+ * separated by semicolons. Other members are ignored.
+ */
+public class JsonLinesFoodAdapter implements FoodDataAdapter {
+    @Override
+    public boolean supports(String source) {
+        String name = source.toLowerCase(Locale.ROOT);
+        return name.endsWith(".jsonl") || name.endsWith(".ndjson");
+    }
+    
+    @Override
+    public boolean hasHeader() {
+        return false;
+    }
+    
+    @Override
+    public LineParser createParser(String header) {
+        return JsonLinesFoodAdapter::parseLine;
+    }
+    
+    /**
+     * Parse one line.
+     * 
+     * @param line The line
+     * @return The food, or null for a blank line
+     * @throws FoodImportException if the line is not a valid food object
+     */
+    private static BasicFood parseLine(String line) throws FoodImportException {
+        if (line.trim().isEmpty()) {
+            return null;
+        }
+        Object value = new JsonReader(line).readDocument();
+        if (!(value instanceof Map)) {
+            throw new FoodImportException("Expected a JSON object");
+        }
+        Map<?, ?> object = (Map<?, ?>) value;
+        
+        Object identifier = object.containsKey("identifier") ? object.get("identifier") : object.get("name");
+        if (!(identifier instanceof String)) {
+            throw new FoodImportException("Missing identifier");
+        }
+        if (!(object.get("calories") instanceof Double)) {
+            throw new FoodImportException("Missing calories");
+        }
+        
+        String[] keywords;
+        Object keywordValue = object.get("keywords");
+        if (keywordValue instanceof String) {
+            keywords = ((String) keywordValue).trim().isEmpty()
+                ? new String[0] : ((String) keywordValue).trim().split("\\s*;\\s*");
+        } else if (keywordValue instanceof List) {
+            List<?> list = (List<?>) keywordValue;
+            keywords = new String[list.size()];
+            for (int i = 0; i < keywords.length; i++) {
+                keywords[i] = String.valueOf(list.get(i)).trim();
+            }
+        } else {
+            keywords = new String[0];
+        }
+        
+        BasicFood food = new BasicFood(((String) identifier).trim(), keywords, (Double) object.get("calories"));
+        Object nutrients = object.get("nutrients");
+        if (nutrients instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) nutrients).entrySet()) {
+                if (!(entry.getValue() instanceof Double)) {
+                    throw new FoodImportException("Nutrient " + entry.getKey() + " is not a number");
+                }
+                food.addNutrient(((String) entry.getKey()).trim(), (Double) entry.getValue());
+            }
+        }
+        return food;
+    }
+    
+    /**
+     * Minimal reader for one JSON document. Objects become maps, arrays
+     * lists, and numbers doubles.
+     */
+    private static class JsonReader {
+        private final String text;
+        private int position;
+        
+        /**
+         * Constructor for JsonReader.
+         * 
+         * @param text The JSON text
+         */
+        public JsonReader(String text) {
+            this.text = text;
+        }
+        
+        /**
+         * Read the whole text as one value.
+         * 
+         * @return The value
+         * @throws FoodImportException if the text is not valid JSON
+         */
+        public Object readDocument() throws FoodImportException {
+            Object value = readValue();
+            skipWhitespace();
+            if (position < text.length()) {
+                throw error("Unexpected text after value");
+            }
+            return value;
+        }
+        
+        /**
+         * Read a value.
+         * 
+         * @return The value
+         * @throws FoodImportException if the value is not valid
+         */
+        private Object readValue() throws FoodImportException {
+            skipWhitespace();
+            if (position >= text.length()) {
+                throw error("Unexpected end of line");
+            }
+            char c = text.charAt(position);
+            if (c == '{') {
+                return readObject();
+            } else if (c == '[') {
+                return readArray();
+            } else if (c == '"') {
+                return readString();
+            } else if (text.startsWith("true", position)) {
+                position += 4;
+                return Boolean.TRUE;
+            } else if (text.startsWith("false", position)) {
+                position += 5;
+                return Boolean.FALSE;
+            } else if (text.startsWith("null", position)) {
+                position += 4;
+                return null;
+            }
+            return readNumber();
+        }
+        
+        /**
+         * Read an object.
+         * 
+         * @return The members, in order
+         * @throws FoodImportException if the object is not valid
+         */
+        private Map<String, Object> readObject() throws FoodImportException {
+            Map<String, Object> members = new LinkedHashMap<>();
+            position++;
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return members;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw error("Expected a member name");
+                }
+                String name = readString();
+                skipWhitespace();
+                expect(':');
+                members.put(name, readValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                } else {
+                    expect('}');
+                    return members;
+                }
+            }
+        }
+        
+        /**
+         * Read an array.
+         * 
+         * @return The elements
+         * @throws FoodImportException if the array is not valid
+         */
+        private List<Object> readArray() throws FoodImportException {
+            List<Object> elements = new ArrayList<>();
+            position++;
+            skipWhitespace();
+            if (peek() == ']') {
+                position++;
+                return elements;
+            }
+            while (true) {
+                elements.add(readValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                } else {
+                    expect(']');
+                    return elements;
+                }
+            }
+        }
+        
+        /**
+         * Read a string.
+         * 
+         * @return The string, unescaped
+         * @throws FoodImportException if the string is not valid
+         */
+        private String readString() throws FoodImportException {
+            StringBuilder result = new StringBuilder();
+            position++;
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return result.toString();
+                }
+                if (c != '\\') {
+                    result.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    break;
+                }
+                char escape = text.charAt(position++);
+                switch (escape) {
+                    case 'b': result.append('\b'); break;
+                    case 'f': result.append('\f'); break;
+                    case 'n': result.append('\n'); break;
+                    case 'r': result.append('\r'); break;
+                    case 't': result.append('\t'); break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("Invalid unicode escape");
+                        }
+                        try {
+                            result.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid unicode escape");
+                        }
+                        position += 4;
+                        break;
+                    default: result.append(escape);
+                }
+            }
+            throw error("Unterminated string");
+        }
+        
+        /**
+         * Read a number.
+         * 
+         * @return The number
+         * @throws FoodImportException if the number is not valid
+         */
+        private Double readNumber() throws FoodImportException {
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            try {
+                return Double.valueOf(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                throw error("Invalid value");
+            }
+        }
+        
+        /**
+         * Skip whitespace.
+         */
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+        
+        /**
+         * Get the next character without consuming it.
+         * 
+         * @return The character, or 0 at the end
+         */
+        private char peek() {
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+        
+        /**
+         * Consume an expected character.
+         * 
+         * @param c The character
+         * @throws FoodImportException if the next character is different
+         */
+        private void expect(char c) throws FoodImportException {
+            if (peek() != c) {
+                throw error("Expected '" + c + "'");
+            }
+            position++;
+        }
+        
+        /**
+         * Create an error for the current position.
+         * 
+         * @param message The error message
+         * @return The exception
+         */
+        private FoodImportException error(String message) {
+            return new FoodImportException(message + " at column " + (position + 1));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.yada.util;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind scheduler shared by all stores that persist to files.
+ * A store hands over a write for a file instead of writing it itself, so
+ * the calling thread (usually the Swing event thread) never waits on disk.
+ *
+ * Each file has at most one write running at a time. A write requested
+ * while another one for the same file is waiting replaces it, so a burst
+ * of edits ends up as a single write of the latest state. Stores must
+ * therefore pass a write that captures a snapshot of their state, or that
+ * reads only immutable state when it runs.
+ *
+ * A file's slot exists only while a write is waiting or running, so files
+ * written once (e.g. per-user logs) do not accumulate.
+ */
+public class PersistenceScheduler {
+    /**
+     * Delay before a requested write runs, during which further requests
+     * for the same file are merged into it.
+     */
+    private static final long COALESCE_DELAY_MILLIS = 100;
+
+    private static final PersistenceScheduler INSTANCE = new PersistenceScheduler();
+
+    private final ScheduledExecutorService executor;
+    private final Map<String, Slot> slots;
+    private int outstanding; // guarded by this
+
+    /**
+     * Constructor for PersistenceScheduler.
+     */
+    private PersistenceScheduler() {
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(2, runnable -> {
+            Thread thread = new Thread(runnable, "persistence-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.setRemoveOnCancelPolicy(true);
+        executor = pool;
+        slots = new HashMap<>();
+
+        // Writer threads are daemons, so make sure pending writes reach disk on exit
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "persistence-flush"));
+    }
+
+    /**
+     * Get the scheduler shared by all stores.
+     *
+     * @return The scheduler
+     */
+    public static PersistenceScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Request a write of a file. Replaces a write for the same file that
+     * has not started yet.
+     *
+     * @param file The path of the file, used to serialize its writes
+     * @param write The write to run
+     */
+    public synchronized void schedule(String file, Write write) {
+        Slot slot = slots.computeIfAbsent(file, Slot::new);
+        if (slot.pending == null) {
+            outstanding++;
+            if (!slot.running) {
+                executor.schedule(() -> run(slot), COALESCE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        slot.pending = write;
+    }
+
+    /**
+     * Wait until every write requested so far has finished. Requested
+     * writes are started at once instead of after the coalescing delay.
+     */
+    public synchronized void flush() {
+        for (Slot slot : slots.values()) {
+            if (slot.pending != null && !slot.running) {
+                executor.execute(() -> run(slot));
+            }
+        }
+
+        boolean interrupted = false;
+        while (outstanding > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run the pending write of a file, then any write requested meanwhile.
+     *
+     * @param slot The file's slot
+     */
+    private void run(Slot slot) {
+        Write write;
+        synchronized (this) {
+            // A flush may have started this slot already
+            if (slot.running || slot.pending == null) {
+                return;
+            }
+            write = slot.pending;
+            slot.pending = null;
+            slot.running = true;
+        }
+
+        try {
+            write.run();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error saving " + slot.file + ": " + e.getMessage());
+        }
+
+        synchronized (this) {
+            slot.running = false;
+            outstanding--;
+            if (slot.pending != null) {
+                executor.schedule(() -> run(slot), COALESCE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            } else {
+                // Drop idle slots so that the map holds only files being written;
+                // a later request starts a new slot
+                slots.remove(slot.file);
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * A write of one file.
+     */
+    public interface Write {
+        /**
+         * Write the file.
+         *
+         * @throws IOException if the file cannot be written
+         */
+        void run() throws IOException;
+    }
+
+    /**
+     * Write state of one file.
+     */
+    private static class Slot {
+        private final String file;
+        private Write pending;
+        private boolean running;
+
+        /**
+         * Constructor for Slot.
+         *
+         * @param file The path of the file
+         */
+        public Slot(String file) {
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,590 @@
+package com.yada.util;
+
+import com.yada.model.BasicFood;
+import com.yada.model.ProgressListener;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Joins a USDA FoodData Central style food table with its food-nutrient
+ * table, both CSV files keyed by fdc_id, into basic foods:
+ *
+ *   food.csv:          fdc_id,description,...
+ *   food_nutrient.csv: fdc_id,nutrient_id,amount,...
+ *   nutrient.csv:      id,name,unit_name,...   (optional)
+ *
+ * The food-nutrient table can be many times larger than memory, so this is
+ * a Grace hash join: both tables are first partitioned by a hash of fdc_id
+ * into spill files in a temporary directory, sized so that one partition
+ * fits comfortably in memory. Each partition is then joined on its own,
+ * building a hash table of its foods and streaming its nutrient rows
+ * through it. A partition that still comes out larger than its budget,
+ * because the input is larger than the partition count allows or its ids
+ * are skewed, is partitioned again with a different hash seed before it is
+ * joined. Heap use is bounded by one partition plus the joined foods,
+ * whatever the size of the input.
+ */
+class SpillingFoodJoin {
+    /**
+     * Bytes of food-nutrient table per partition.
+     */
+    private static final long PARTITION_BYTES = 32L << 20;
+    
+    private static final int MAX_PARTITIONS = 1024;
+    
+    /**
+     * Times a partition may be partitioned again. Rows of one food always
+     * share a partition, so this stops the recursion on a single huge food.
+     */
+    private static final int MAX_REPARTITIONS = 4;
+    
+    /**
+     * Nutrient id of energy in kcal, used when there is no nutrient table.
+     */
+    private static final String ENERGY_NUTRIENT_ID = "1008";
+    
+    /**
+     * Rows between progress reports.
+     */
+    private static final int PROGRESS_INTERVAL = 100000;
+    
+    private final File foodFile;
+    private final File foodNutrientFile;
+    private final File nutrientFile;
+    
+    // Nutrient names by id, and the preference of each energy nutrient (lower is better)
+    private final Map<String, String> nutrientNames = new HashMap<>();
+    private final Map<String, Integer> energyRanks = new HashMap<>();
+    
+    private long rows;
+    
+    /**
+     * Constructor for SpillingFoodJoin.
+     * 
+     * @param foodFile The food table
+     * @param foodNutrientFile The food-nutrient table
+     * @param nutrientFile The nutrient table, or null to name nutrients by id
+     */
+    public SpillingFoodJoin(File foodFile, File foodNutrientFile, File nutrientFile) {
+        this.foodFile = foodFile;
+        this.foodNutrientFile = foodNutrientFile;
+        this.nutrientFile = nutrientFile;
+    }
+    
+    /**
+     * Get the number of rows read from all tables so far.
+     * 
+     * @return The number of rows, excluding headers
+     */
+    public long getRows() {
+        return rows;
+    }
+    
+    /**
+     * Run the join.
+     * 
+     * @param sink Receives each joined food, and each rejected row or food
+     * @param listener Receives the number of food-nutrient rows partitioned,
+     *                 then joined out of the total, or null
+     * @throws FoodImportException if a table cannot be read or lacks a column
+     */
+    public void run(Sink sink, ProgressListener listener) throws FoodImportException {
+        readNutrients();
+        
+        int partitions = partitionCount(foodNutrientFile.length());
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("food-join");
+            partitionFoods(directory, partitions, sink);
+            long nutrientRows = partitionFoodNutrients(directory, partitions, sink, listener);
+            
+            long joined = 0;
+            for (int p = 0; p < partitions; p++) {
+                joined += joinPartition(directory, String.valueOf(p), 0, Long.MAX_VALUE, sink);
+                if (listener != null) {
+                    listener.progress(joined, nutrientRows);
+                }
+            }
+        } catch (IOException e) {
+            throw new FoodImportException("Error joining " + foodFile + " and " + foodNutrientFile
+                + ": " + e.getMessage(), e);
+        } finally {
+            if (directory != null) {
+                deleteDirectory(directory);
+            }
+        }
+    }
+    
+    /**
+     * Read the names of nutrients and find the energy nutrients.
+     * 
+     * @throws FoodImportException if the table cannot be read
+     */
+    private void readNutrients() throws FoodImportException {
+        if (nutrientFile == null) {
+            energyRanks.put(ENERGY_NUTRIENT_ID, 0);
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(nutrientFile.toPath(), StandardCharsets.UTF_8)) {
+            int[] columns = columns(reader.readLine(), nutrientFile, "id", "name", "unit_name");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                rows++;
+                List<String> fields = CsvFoodAdapter.split(line);
+                String id = field(fields, columns[0]);
+                String name = field(fields, columns[1]);
+                if (name.toLowerCase(Locale.ROOT).startsWith("energy")) {
+                    if (field(fields, columns[2]).equalsIgnoreCase("kcal")) {
+                        energyRanks.put(id, name.equalsIgnoreCase("energy") ? 0 : 1);
+                    }
+                } else {
+                    nutrientNames.put(id, clean(name));
+                }
+            }
+        } catch (IOException e) {
+            throw new FoodImportException("Error reading " + nutrientFile + ": " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Spill the food table into partitions as "fdc_id TAB description" lines.
+     * 
+     * @param directory The spill directory
+     * @param partitions The number of partitions
+     * @param sink Receives rejected rows
+     * @throws IOException if a file cannot be read or written
+     * @throws FoodImportException if the table lacks a column
+     */
+    private void partitionFoods(Path directory, int partitions, Sink sink) throws IOException, FoodImportException {
+        BufferedWriter[] writers = openPartitions(directory, "", partitions, ".foods");
+        try (BufferedReader reader = Files.newBufferedReader(foodFile.toPath(), StandardCharsets.UTF_8)) {
+            int[] columns = columns(reader.readLine(), foodFile, "fdc_id", "description");
+            String line;
+            long lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                rows++;
+                lineNumber++;
+                List<String> fields = CsvFoodAdapter.split(line);
+                String id = field(fields, columns[0]);
+                String description = clean(field(fields, columns[1]));
+                if (id.isEmpty() || description.isEmpty()) {
+                    sink.accept(null, foodFile.getName() + " line " + lineNumber + ": missing fdc_id or description");
+                    continue;
+                }
+                BufferedWriter writer = writers[partition(id, partitions, 0)];
+                writer.write(id);
+                writer.write('\t');
+                writer.write(description);
+                writer.newLine();
+            }
+        } finally {
+            closeAll(writers);
+        }
+    }
+    
+    /**
+     * Spill the food-nutrient table into partitions as
+     * "fdc_id TAB nutrient_id TAB amount" lines.
+     * 
+     * @param directory The spill directory
+     * @param partitions The number of partitions
+     * @param sink Receives rejected rows
+     * @param listener Receives the number of rows partitioned, or null
+     * @return The number of rows partitioned
+     * @throws IOException if a file cannot be read or written
+     * @throws FoodImportException if the table lacks a column
+     */
+    private long partitionFoodNutrients(Path directory, int partitions, Sink sink, ProgressListener listener)
+            throws IOException, FoodImportException {
+        BufferedWriter[] writers = openPartitions(directory, "", partitions, ".nutrients");
+        long partitioned = 0;
+        try (BufferedReader reader = Files.newBufferedReader(foodNutrientFile.toPath(), StandardCharsets.UTF_8)) {
+            int[] columns = columns(reader.readLine(), foodNutrientFile, "fdc_id", "nutrient_id", "amount");
+            String line;
+            long lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                rows++;
+                lineNumber++;
+                List<String> fields = CsvFoodAdapter.split(line);
+                String id = field(fields, columns[0]);
+                String nutrient = field(fields, columns[1]);
+                String amount = field(fields, columns[2]);
+                if (amount.isEmpty()) {
+                    continue;
+                }
+                try {
+                    Double.parseDouble(amount);
+                } catch (NumberFormatException e) {
+                    sink.accept(null, foodNutrientFile.getName() + " line " + lineNumber + ": amount is not a number: " + amount);
+                    continue;
+                }
+                BufferedWriter writer = writers[partition(id, partitions, 0)];
+                writer.write(id);
+                writer.write('\t');
+                writer.write(nutrient);
+                writer.write('\t');
+                writer.write(amount);
+                writer.newLine();
+                
+                if (++partitioned % PROGRESS_INTERVAL == 0 && listener != null) {
+                    listener.progress(partitioned, -1);
+                }
+            }
+        } finally {
+            closeAll(writers);
+        }
+        return partitioned;
+    }
+    
+    /**
+     * Join one partition: build a hash table of its foods, stream its
+     * nutrient rows through it, and hand over the joined foods. A partition
+     * over the budget is partitioned again and its parts joined instead.
+     * 
+     * @param directory The spill directory
+     * @param partition The name of the partition's spill files
+     * @param depth The number of times the partition was partitioned again
+     * @param parentBytes The size of the nutrient spill file it was split from
+     * @param sink Receives the joined foods
+     * @return The number of nutrient rows in the partition
+     * @throws IOException if a spill file cannot be read
+     */
+    private long joinPartition(Path directory, String partition, int depth, long parentBytes, Sink sink)
+            throws IOException {
+        long bytes = Files.size(directory.resolve(partition + ".nutrients"));
+        // A part no smaller than its parent holds a single food; splitting it again would not help
+        if (bytes > PARTITION_BYTES && bytes < parentBytes && depth < MAX_REPARTITIONS) {
+            int parts = Math.max(2, partitionCount(bytes));
+            repartition(directory, partition, ".foods", parts, depth + 1);
+            repartition(directory, partition, ".nutrients", parts, depth + 1);
+            long nutrientRows = 0;
+            for (int p = 0; p < parts; p++) {
+                nutrientRows += joinPartition(directory, partition + "-" + p, depth + 1, bytes, sink);
+            }
+            return nutrientRows;
+        }
+        
+        Map<String, JoinedFood> foods = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(directory.resolve(partition + ".foods"),
+                StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                foods.put(line.substring(0, tab), new JoinedFood(line.substring(tab + 1)));
+            }
+        }
+        
+        long nutrientRows = 0;
+        try (BufferedReader reader = Files.newBufferedReader(directory.resolve(partition + ".nutrients"),
+                StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                nutrientRows++;
+                int first = line.indexOf('\t');
+                int second = line.indexOf('\t', first + 1);
+                JoinedFood food = foods.get(line.substring(0, first));
+                if (food != null) {
+                    food.add(line.substring(first + 1, second), Double.parseDouble(line.substring(second + 1)));
+                }
+            }
+        }
+        Files.delete(directory.resolve(partition + ".foods"));
+        Files.delete(directory.resolve(partition + ".nutrients"));
+        
+        for (JoinedFood food : foods.values()) {
+            if (Double.isNaN(food.calories)) {
+                sink.accept(null, food.description + ": no energy in kcal");
+            } else {
+                sink.accept(food.toBasicFood(), null);
+            }
+        }
+        return nutrientRows;
+    }
+    
+    /**
+     * Split one spill file of a partition into parts by a hash of fdc_id,
+     * the first field of each line, then delete it.
+     * 
+     * @param directory The spill directory
+     * @param partition The name of the partition's spill files
+     * @param suffix The file suffix
+     * @param parts The number of parts
+     * @param seed The hash seed, different from the one that made the partition
+     * @throws IOException if a file cannot be read or written
+     */
+    private static void repartition(Path directory, String partition, String suffix, int parts, int seed)
+            throws IOException {
+        Path file = directory.resolve(partition + suffix);
+        BufferedWriter[] writers = openPartitions(directory, partition + "-", parts, suffix);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                BufferedWriter writer = writers[partition(line.substring(0, line.indexOf('\t')), parts, seed)];
+                writer.write(line);
+                writer.newLine();
+            }
+        } finally {
+            closeAll(writers);
+        }
+        Files.delete(file);
+    }
+    
+    /**
+     * Get the number of partitions for a food-nutrient table.
+     * 
+     * @param bytes The size of the table
+     * @return The number of partitions
+     */
+    private static int partitionCount(long bytes) {
+        return (int) Math.max(1, Math.min(MAX_PARTITIONS, (bytes + PARTITION_BYTES - 1) / PARTITION_BYTES));
+    }
+    
+    /**
+     * Find the positions of required columns in a header.
+     * 
+     * @param header The header line
+     * @param file The file, for error messages
+     * @param names The column names
+     * @return The position of each column
+     * @throws FoodImportException if a column is missing
+     */
+    private static int[] columns(String header, File file, String... names) throws FoodImportException {
+        if (header == null) {
+            throw new FoodImportException("Empty file: " + file);
+        }
+        List<String> columns = CsvFoodAdapter.split(header);
+        int[] positions = new int[names.length];
+        for (int n = 0; n < names.length; n++) {
+            positions[n] = -1;
+            for (int i = 0; i < columns.size(); i++) {
+                if (columns.get(i).trim().equalsIgnoreCase(names[n])) {
+                    positions[n] = i;
+                }
+            }
+            if (positions[n] < 0) {
+                throw new FoodImportException(file.getName() + " has no " + names[n] + " column");
+            }
+        }
+        return positions;
+    }
+    
+    /**
+     * Get a trimmed field.
+     * 
+     * @param fields The fields of a line
+     * @param column The column
+     * @return The field, or an empty string if the line is short
+     */
+    private static String field(List<String> fields, int column) {
+        return column < fields.size() ? fields.get(column).trim() : "";
+    }
+    
+    /**
+     * Make a name storable in the foods file by replacing its separator
+     * characters with spaces, e.g. "Cheese, cheddar" becomes "Cheese cheddar".
+     * 
+     * @param name The name
+     * @return The cleaned name
+     */
+    private static String clean(String name) {
+        StringBuilder cleaned = new StringBuilder(name.length());
+        boolean space = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            switch (c) {
+                case '|':
+                case ',':
+                case ':':
+                case '=':
+                case '\t':
+                case '\r':
+                case '\n':
+                case ' ':
+                    space = true;
+                    break;
+                default:
+                    // Runs of separators and spaces become one space, none at the start
+                    if (space && cleaned.length() > 0) {
+                        cleaned.append(' ');
+                    }
+                    cleaned.append(c);
+                    space = false;
+            }
+        }
+        return cleaned.toString().trim();
+    }
+    
+    /**
+     * Get the partition of a food id. Each seed spreads ids differently, so
+     * the ids of one partition are spread over all parts when it is
+     * partitioned again with another seed.
+     * 
+     * @param id The fdc_id
+     * @param partitions The number of partitions
+     * @param seed The hash seed
+     * @return The partition
+     */
+    private static int partition(String id, int partitions, int seed) {
+        // Murmur3 finalizer over the string hash mixed with the seed
+        int hash = id.hashCode() ^ seed * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % partitions;
+    }
+    
+    /**
+     * Open one spill file per partition.
+     * 
+     * @param directory The spill directory
+     * @param prefix The file name prefix
+     * @param partitions The number of partitions
+     * @param suffix The file suffix
+     * @return The writers
+     * @throws IOException if a file cannot be created
+     */
+    private static BufferedWriter[] openPartitions(Path directory, String prefix, int partitions, String suffix)
+            throws IOException {
+        BufferedWriter[] writers = new BufferedWriter[partitions];
+        try {
+            for (int p = 0; p < partitions; p++) {
+                writers[p] = Files.newBufferedWriter(directory.resolve(prefix + p + suffix), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            closeAll(writers);
+            throw e;
+        }
+        return writers;
+    }
+    
+    /**
+     * Close writers, reporting the first error.
+     * 
+     * @param writers The writers, some possibly null
+     * @throws IOException if a writer cannot be closed
+     */
+    private static void closeAll(BufferedWriter[] writers) throws IOException {
+        IOException error = null;
+        for (BufferedWriter writer : writers) {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    error = error == null ? e : error;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+    
+    /**
+     * Delete the spill directory and its files.
+     * 
+     * @param directory The directory
+     */
+    private static void deleteDirectory(Path directory) {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.toFile().delete();
+    }
+    
+    /**
+     * A food being joined with its nutrient rows.
+     */
+    private class JoinedFood {
+        private final String description;
+        private String[] nutrients = new String[8];
+        private double[] amounts = new double[8];
+        private int size;
+        private double calories = Double.NaN;
+        private int caloriesRank = Integer.MAX_VALUE;
+        
+        /**
+         * Constructor for JoinedFood.
+         * 
+         * @param description The food description
+         */
+        public JoinedFood(String description) {
+            this.description = description;
+        }
+        
+        /**
+         * Add a nutrient row.
+         * 
+         * @param nutrientId The nutrient id
+         * @param amount The amount
+         */
+        public void add(String nutrientId, double amount) {
+            Integer rank = energyRanks.get(nutrientId);
+            if (rank != null) {
+                if (rank < caloriesRank) {
+                    calories = amount;
+                    caloriesRank = rank;
+                }
+                return;
+            }
+            if (size == nutrients.length) {
+                nutrients = Arrays.copyOf(nutrients, size * 2);
+                amounts = Arrays.copyOf(amounts, size * 2);
+            }
+            nutrients[size] = nutrientId;
+            amounts[size] = amount;
+            size++;
+        }
+        
+        /**
+         * Build the basic food, with the words of the description as keywords.
+         * 
+         * @return The food
+         */
+        public BasicFood toBasicFood() {
+            Set<String> keywords = new LinkedHashSet<>();
+            for (String word : description.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+                if (word.length() >= 3) {
+                    keywords.add(word);
+                }
+            }
+            BasicFood food = new BasicFood(description, keywords.toArray(new String[0]), calories);
+            for (int i = 0; i < size; i++) {
+                String name = nutrientNames.get(nutrients[i]);
+                food.addNutrient(name != null ? name : "nutrient " + nutrients[i], amounts[i]);
+            }
+            return food;
+        }
+    }
+    
+    /**
+     * Receives the results of the join.
+     */
+    interface Sink {
+        /**
+         * Accept a joined food or a rejection.
+         * 
+         * @param food The food, or null if something was rejected
+         * @param error The reason for the rejection, or null
+         */
+        void accept(BasicFood food, String error);
+    }
+}
@@ -0,0 +1,217 @@
+package com.yada.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Correctness check and benchmark for memoized composite calories. Builds
+ * a deep and wide DAG of composites, where each composite uses several
+ * foods of the level below and composites share components, then replaces
+ * basic foods and composites through updateFood. After every update the
+ * calories of every composite are compared with a fresh recompute that
+ * follows components by identifier, so a missed invalidation or a
+ * composite still linked to an old version shows up as a stale value.
+ *
+ * It also times repeated lookups of warm composites at the bottom and the
+ * top of the DAG. Memoized lookups take the same time at any depth.
+ *
+ * The database is kept in a new temporary directory, so runs do not see
+ * each other's foods.
+ * Run with: java -cp classes:test-classes com.yada.model.CompositeCaloriesTest
+ * Exits with an AssertionError on the first stale value.
+ */
+public class CompositeCaloriesTest {
+    private static final int BASIC_FOODS = 500;
+    private static final int DEPTH = 20;
+    private static final int WIDTH = 100;
+    private static final int COMPONENTS = 3;
+    private static final int UPDATES = 200;
+    private static final int LOOKUP_ROUNDS = 2_000;
+
+    /**
+     * Lookups at the top of the DAG may take at most this many times as
+     * long as at the bottom; without memoization they would take about
+     * COMPONENTS ^ DEPTH times as long.
+     */
+    private static final double MAX_DEPTH_RATIO = 4;
+
+    /**
+     * Run the check.
+     *
+     * @param args Ignored
+     * @throws IOException if the temporary directory cannot be created
+     */
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(42);
+        FoodDatabase database = new FoodDatabase(Files.createTempDirectory("foods").toFile(), false);
+        for (int i = 0; i < BASIC_FOODS; i++) {
+            database.addFood(new BasicFood(basicName(i), new String[] {"base"}, 1 + random.nextInt(500)));
+        }
+        for (int level = 1; level <= DEPTH; level++) {
+            for (int w = 0; w < WIDTH; w++) {
+                database.addFood(composite(database, random, level, w));
+            }
+        }
+        checkAll(database, "after loading");
+
+        for (int u = 0; u < UPDATES; u++) {
+            String changed;
+            if (u % 4 == 3) {
+                // Replace a composite with a version using other components
+                int level = 1 + random.nextInt(DEPTH);
+                int w = random.nextInt(WIDTH);
+                changed = compositeName(level, w);
+                check(database.updateFood(composite(database, random, level, w)), "updateFood failed for " + changed);
+            } else {
+                changed = basicName(random.nextInt(BASIC_FOODS));
+                check(database.updateFood(new BasicFood(changed, new String[] {"base"}, 1 + random.nextInt(500))),
+                        "updateFood failed for " + changed);
+            }
+            checkAll(database, "after updating " + changed);
+        }
+        System.out.println(UPDATES + " updates of a " + DEPTH + " x " + WIDTH
+                + " composite DAG; every composite matches a fresh recompute");
+
+        double bottom = lookupNanos(database, 1);
+        double top = lookupNanos(database, DEPTH);
+        System.out.printf("Warm lookup: %.1f ns at depth 1, %.1f ns at depth %d%n", bottom, top, DEPTH);
+        check(top <= MAX_DEPTH_RATIO * Math.max(bottom, 1),
+                "lookups at depth " + DEPTH + " take " + top / bottom + " times as long as at depth 1");
+        System.exit(0);
+    }
+
+    /**
+     * Create a composite of a level from random foods of the level below,
+     * plus a basic food so that levels share leaves.
+     *
+     * @param database The database
+     * @param random The random source
+     * @param level The level, from 1
+     * @param w The position in the level
+     * @return The composite
+     */
+    private static CompositeFood composite(FoodDatabase database, Random random, int level, int w) {
+        CompositeFood composite = new CompositeFood(compositeName(level, w), new String[] {"level" + level});
+        for (int c = 0; c < COMPONENTS; c++) {
+            String component = level == 1 ? basicName(random.nextInt(BASIC_FOODS))
+                    : compositeName(level - 1, random.nextInt(WIDTH));
+            composite.addComponent(database.getFoodByIdentifier(component), 0.5 + random.nextInt(4));
+        }
+        composite.addComponent(database.getFoodByIdentifier(basicName(random.nextInt(BASIC_FOODS))), 1);
+        return composite;
+    }
+
+    /**
+     * Check the calories of every composite against a fresh recompute.
+     *
+     * @param database The database
+     * @param when What happened last, for the failure message
+     */
+    private static void checkAll(FoodDatabase database, String when) {
+        Map<String, Double> expected = new HashMap<>();
+        for (int level = 1; level <= DEPTH; level++) {
+            for (int w = 0; w < WIDTH; w++) {
+                String name = compositeName(level, w);
+                double actual = database.getFoodByIdentifier(name).getCaloriesPerServing();
+                double fresh = recompute(database, name, expected);
+                check(Math.abs(actual - fresh) <= 1e-9 * Math.abs(fresh),
+                        name + " has calories " + actual + " instead of " + fresh + " " + when);
+            }
+        }
+    }
+
+    /**
+     * Recompute the calories of a food from the current version of each
+     * of its components, without using memoized values.
+     *
+     * @param database The database
+     * @param identifier The food identifier
+     * @param computed Calories already recomputed in this check
+     * @return The calories per serving
+     */
+    private static double recompute(FoodDatabase database, String identifier, Map<String, Double> computed) {
+        Double known = computed.get(identifier);
+        if (known != null) {
+            return known;
+        }
+        Food food = database.getFoodByIdentifier(identifier);
+        double total;
+        if (food instanceof CompositeFood) {
+            CompositeFood composite = (CompositeFood) food;
+            List<Food> components = composite.getComponents();
+            List<Double> servings = composite.getServings();
+            total = 0;
+            for (int i = 0; i < components.size(); i++) {
+                total += recompute(database, components.get(i).getIdentifier(), computed) * servings.get(i);
+            }
+        } else {
+            total = food.getCaloriesPerServing();
+        }
+        computed.put(identifier, total);
+        return total;
+    }
+
+    /**
+     * Time lookups of the warm composites of one level.
+     *
+     * @param database The database
+     * @param level The level
+     * @return The best time per lookup over the rounds, in nanoseconds
+     */
+    private static double lookupNanos(FoodDatabase database, int level) {
+        List<Food> foods = new ArrayList<>();
+        for (int w = 0; w < WIDTH; w++) {
+            foods.add(database.getFoodByIdentifier(compositeName(level, w)));
+        }
+
+        double best = Double.MAX_VALUE;
+        double sink = 0;
+        for (int round = 0; round < LOOKUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (Food food : foods) {
+                sink += food.getCaloriesPerServing();
+            }
+            best = Math.min(best, (System.nanoTime() - start) / (double) foods.size());
+        }
+        check(sink > 0, "no calories");
+        return best;
+    }
+
+    /**
+     * Get the identifier of a basic food.
+     *
+     * @param i The food number
+     * @return The identifier
+     */
+    private static String basicName(int i) {
+        return "base " + i;
+    }
+
+    /**
+     * Get the identifier of a composite.
+     *
+     * @param level The level, from 1
+     * @param w The position in the level
+     * @return The identifier
+     */
+    private static String compositeName(int level, int w) {
+        return "level " + level + " food " + w;
+    }
+
+    /**
+     * Fail with a message unless a condition holds.
+     *
+     * @param condition The condition
+     * @param message The failure message
+     */
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.yada.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Race test for memoized composite calories under concurrent readers. A
+ * chain of composites "level 0" to "level 5" sits on one basic food, each
+ * level using two servings of the level below. Reader threads keep
+ * computing and memoizing every level while a writer changes the bottom of
+ * the chain, alternating between replacing the basic food through
+ * updateFood and changing the servings of "level 0" in place followed by
+ * foodChanged.
+ *
+ * After every change the writer checks the calories of the top composite.
+ * A composite that a reader memoized from a component not yet invalidated
+ * keeps a stale total, which shows up as a wrong top value.
+ *
+ * The database is kept in a new temporary directory, so runs do not see
+ * each other's foods.
+ * Run with: java -cp classes:test-classes com.yada.model.CompositeInvalidationRaceTest
+ * Exits with an AssertionError on the first stale value.
+ */
+public class CompositeInvalidationRaceTest {
+    private static final int LEVELS = 6;
+    private static final int READERS = 4;
+    private static final int UPDATES = 20_000;
+
+    /**
+     * Run the test.
+     *
+     * @param args Ignored
+     * @throws InterruptedException if interrupted while waiting for the threads
+     * @throws IOException if the temporary directory cannot be created
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        FoodDatabase database = new FoodDatabase(Files.createTempDirectory("foods").toFile(), false);
+        database.addFood(new BasicFood("leaf", new String[] {"leaf"}, 1));
+        CompositeFood bottom = new CompositeFood(levelName(0), new String[] {"level"});
+        bottom.addComponent(database.getFoodByIdentifier("leaf"), 1);
+        database.addFood(bottom);
+        for (int level = 1; level < LEVELS; level++) {
+            CompositeFood composite = new CompositeFood(levelName(level), new String[] {"level"});
+            composite.addComponent(database.getFoodByIdentifier(levelName(level - 1)), 2);
+            database.addFood(composite);
+        }
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger reads = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            int seed = r;
+            readers.add(new Thread(() -> {
+                try {
+                    for (int n = seed; writing.get(); n++) {
+                        database.getFoodByIdentifier(levelName(n % LEVELS)).getCaloriesPerServing();
+                        reads.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }, "reader-" + r));
+        }
+
+        long start = System.nanoTime();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        try {
+            double calories = 1;
+            double servings = 1;
+            for (int u = 1; u <= UPDATES; u++) {
+                if (u % 2 == 0) {
+                    calories = u;
+                    check(database.updateFood(new BasicFood("leaf", new String[] {"leaf"}, calories)),
+                            "updateFood failed for leaf");
+                } else {
+                    servings = u;
+                    CompositeFood level = (CompositeFood) database.getFoodByIdentifier(levelName(0));
+                    level.setComponents(new ArrayList<>(level.getComponents()),
+                            new ArrayList<>(Collections.singletonList(servings)));
+                    database.foodChanged(levelName(0));
+                }
+
+                double expected = calories * servings * Math.pow(2, LEVELS - 1);
+                double top = database.getFoodByIdentifier(levelName(LEVELS - 1)).getCaloriesPerServing();
+                check(top == expected, "after update " + u + " " + levelName(LEVELS - 1) + " has calories "
+                        + top + " instead of " + expected);
+            }
+        } finally {
+            writing.set(false);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+        if (!failures.isEmpty()) {
+            AssertionError error = new AssertionError(failures.size() + " reader(s) failed");
+            failures.forEach(error::addSuppressed);
+            throw error;
+        }
+
+        System.out.printf("%d updates of a %d-level chain with %d concurrent reads in %d ms; top always matched%n",
+                UPDATES, LEVELS, reads.get(), (System.nanoTime() - start) / 1_000_000);
+        System.exit(0);
+    }
+
+    /**
+     * Get the identifier of a composite in the chain.
+     *
+     * @param level The level, 0 at the bottom
+     * @return The identifier
+     */
+    private static String levelName(int level) {
+        return "level " + level;
+    }
+
+    /**
+     * Fail with a message unless a condition holds.
+     *
+     * @param condition The condition
+     * @param message The failure message
+     */
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
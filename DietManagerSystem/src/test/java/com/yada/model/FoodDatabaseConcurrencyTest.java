@@ -0,0 +1,232 @@
+package com.yada.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress test for concurrent reads of FoodDatabase. Reader threads look
+ * up, search and total foods while a writer replaces basic foods through
+ * updateFood, which relinks the composites using them, and adds new foods
+ * through addFood.
+ *
+ * Every basic food "base i" has calories i + VERSION_STEP * version, so a
+ * reader can check any value it sees without locking: a torn or stale
+ * composite total would not add up modulo VERSION_STEP. Once the writer
+ * stops, every food is checked against the writer's reference values.
+ *
+ * The database is kept in a new temporary directory, so runs do not see
+ * each other's foods.
+ * Run with: java -cp classes:test-classes com.yada.model.FoodDatabaseConcurrencyTest
+ * Exits with an AssertionError on the first inconsistency.
+ */
+public class FoodDatabaseConcurrencyTest {
+    private static final int BASIC_FOODS = 2_000;
+    private static final int COMPOSITES = 500;
+    private static final int NESTED_COMPOSITES = 100;
+    private static final int UPDATES = 20_000;
+    private static final double VERSION_STEP = 100_000;
+
+    /**
+     * Run the test.
+     *
+     * @param args Ignored
+     * @throws InterruptedException if interrupted while waiting for the threads
+     * @throws IOException if the temporary directory cannot be created
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        FoodDatabase database = new FoodDatabase(Files.createTempDirectory("foods").toFile(), false);
+        int[] versions = new int[BASIC_FOODS];
+        for (int i = 0; i < BASIC_FOODS; i++) {
+            database.addFood(new BasicFood(basicName(i), new String[] {"base"}, i));
+        }
+        // "meal j" is base j plus base j + 1; "menu k" is meal k plus meal k + 1
+        for (int j = 0; j < COMPOSITES; j++) {
+            CompositeFood meal = new CompositeFood("meal " + j, new String[] {"meal"});
+            meal.addComponent(database.getFoodByIdentifier(basicName(j)), 1);
+            meal.addComponent(database.getFoodByIdentifier(basicName(j + 1)), 1);
+            database.addFood(meal);
+        }
+        for (int k = 0; k < NESTED_COMPOSITES; k++) {
+            CompositeFood menu = new CompositeFood("menu " + k, new String[] {"menu"});
+            menu.addComponent(database.getFoodByIdentifier("meal " + k), 1);
+            menu.addComponent(database.getFoodByIdentifier("meal " + (k + 1)), 1);
+            database.addFood(menu);
+        }
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger reads = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+        Thread writer = new Thread(() -> {
+            try {
+                for (int u = 0; u < UPDATES; u++) {
+                    int i = (u * 7919) % BASIC_FOODS;
+                    versions[i]++;
+                    if (!database.updateFood(new BasicFood(basicName(i), new String[] {"base"},
+                            i + VERSION_STEP * versions[i]))) {
+                        throw new AssertionError("updateFood failed for " + basicName(i));
+                    }
+                    if (u % 10 == 0) {
+                        if (!database.addFood(new BasicFood("extra " + added.get(), new String[] {"extra"}, 1))) {
+                            throw new AssertionError("addFood failed for extra " + added.get());
+                        }
+                        added.incrementAndGet();
+                    }
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            } finally {
+                writing.set(false);
+            }
+        }, "writer");
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < Math.max(2, Runtime.getRuntime().availableProcessors()); r++) {
+            int seed = r;
+            readers.add(new Thread(() -> {
+                try {
+                    List<Food> results = new ArrayList<>();
+                    for (int n = seed; writing.get(); n++) {
+                        checkRead(database, n, added.get(), results);
+                        reads.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }, "reader-" + r));
+        }
+
+        long start = System.nanoTime();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.start();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (!failures.isEmpty()) {
+            AssertionError error = new AssertionError(failures.size() + " thread(s) failed");
+            failures.forEach(error::addSuppressed);
+            throw error;
+        }
+
+        checkFinal(database, versions, added.get());
+        System.out.printf("%d updates, %d adds and %d concurrent reads in %d ms; final state matches%n",
+                UPDATES, added.get(), reads.get(), (System.nanoTime() - start) / 1_000_000);
+        System.exit(0);
+    }
+
+    /**
+     * Read a few foods and check what was seen.
+     *
+     * @param database The database
+     * @param n The read number, used to pick foods
+     * @param addedBefore The number of extra foods added before this read started
+     * @param results A reusable result list
+     */
+    private static void checkRead(FoodDatabase database, int n, int addedBefore, List<Food> results) {
+        int i = (n * 31) % BASIC_FOODS;
+        Food basic = database.getFoodByIdentifier(basicName(i));
+        check(basic != null, basicName(i) + " is missing");
+        check(basic.getCaloriesPerServing() % VERSION_STEP == i, basicName(i) + " has calories "
+                + basic.getCaloriesPerServing());
+
+        int j = n % COMPOSITES;
+        CompositeFood meal = (CompositeFood) database.getFoodByIdentifier("meal " + j);
+        check(meal.getCaloriesPerServing() % VERSION_STEP == 2 * j + 1, "meal " + j + " has calories "
+                + meal.getCaloriesPerServing());
+        check(meal.getComponents().size() == 2, "meal " + j + " has " + meal.getComponents().size() + " components");
+        Map<String, Double> nutrients = meal.getAllNutrients();
+        check(nutrients.get("calories") % VERSION_STEP == 2 * j + 1, "meal " + j + " sums calories to "
+                + nutrients.get("calories"));
+
+        int k = n % NESTED_COMPOSITES;
+        double menu = database.getFoodByIdentifier("menu " + k).getCaloriesPerServing();
+        check(menu % VERSION_STEP == 4 * k + 4, "menu " + k + " has calories " + menu);
+
+        if (addedBefore > 0) {
+            String extra = "extra " + (n % addedBefore);
+            check(database.getFoodByIdentifier(extra) != null, extra + " was added but is missing");
+        }
+
+        String[] terms = Food.tokenize(basicName(i));
+        database.searchFoods(basicName(i), results);
+        boolean found = false;
+        for (Food food : results) {
+            check(food.matches(terms), "search for " + basicName(i) + " returned " + food);
+            found |= food.getIdentifier().equals(basicName(i));
+        }
+        check(found, "search did not find " + basicName(i));
+    }
+
+    /**
+     * Check every food against the writer's reference values.
+     *
+     * @param database The database
+     * @param versions The final version of each basic food
+     * @param added The number of extra foods added
+     */
+    private static void checkFinal(FoodDatabase database, int[] versions, int added) {
+        for (int i = 0; i < BASIC_FOODS; i++) {
+            check(database.getFoodByIdentifier(basicName(i)).getCaloriesPerServing() == basicCalories(versions, i),
+                    basicName(i) + " does not have its last version");
+        }
+        for (int j = 0; j < COMPOSITES; j++) {
+            double expected = basicCalories(versions, j) + basicCalories(versions, j + 1);
+            check(database.getFoodByIdentifier("meal " + j).getCaloriesPerServing() == expected,
+                    "meal " + j + " is stale");
+        }
+        for (int k = 0; k < NESTED_COMPOSITES; k++) {
+            double expected = basicCalories(versions, k) + 2 * basicCalories(versions, k + 1)
+                    + basicCalories(versions, k + 2);
+            check(database.getFoodByIdentifier("menu " + k).getCaloriesPerServing() == expected,
+                    "menu " + k + " is stale");
+        }
+        for (int e = 0; e < added; e++) {
+            check(database.getFoodByIdentifier("extra " + e) != null, "extra " + e + " is missing");
+        }
+        check(database.getAllFoods().size() == BASIC_FOODS + COMPOSITES + NESTED_COMPOSITES + added,
+                "getAllFoods has " + database.getAllFoods().size() + " foods");
+    }
+
+    /**
+     * Get the identifier of a basic food.
+     *
+     * @param i The food number
+     * @return The identifier
+     */
+    private static String basicName(int i) {
+        return "base " + i;
+    }
+
+    /**
+     * Get the calories of a basic food at its final version.
+     *
+     * @param versions The version of each basic food
+     * @param i The food number
+     * @return The calories
+     */
+    private static double basicCalories(int[] versions, int i) {
+        return i + VERSION_STEP * versions[i];
+    }
+
+    /**
+     * Fail with a message unless a condition holds.
+     *
+     * @param condition The condition
+     * @param message The failure message
+     */
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
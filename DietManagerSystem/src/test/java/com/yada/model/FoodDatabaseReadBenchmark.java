@@ -0,0 +1,122 @@
+package com.yada.model;
+
+import com.yada.util.PersistenceScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-throughput benchmark for FoodDatabase. Runs lookups and searches
+ * from 1, 2, 4, ... threads up to twice the core count, while a writer
+ * keeps replacing foods, and prints the reads per second of each run with
+ * its speedup over one thread. Since readers never lock, throughput should
+ * grow with the thread count up to the number of cores.
+ *
+ * The database is kept in a new temporary directory, so runs do not see
+ * each other's foods.
+ * Run with: java -cp classes:test-classes com.yada.model.FoodDatabaseReadBenchmark [seconds per run]
+ */
+public class FoodDatabaseReadBenchmark {
+    private static final int FOODS = 100_000;
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args Optionally the number of seconds per run, 2 by default
+     * @throws InterruptedException if interrupted while waiting for the threads
+     * @throws IOException if the temporary directory cannot be created
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        long runNanos = (args.length > 0 ? Long.parseLong(args[0]) : 2) * 1_000_000_000L;
+
+        List<Food> foods = new ArrayList<>(FOODS);
+        for (int i = 0; i < FOODS; i++) {
+            foods.add(new BasicFood("food " + i, new String[] {"kw" + (i % 1000)}, i % 700));
+        }
+        File directory = Files.createTempDirectory("foods").toFile();
+        new FoodDatabase(directory, false).addFoods(foods);
+        PersistenceScheduler.getInstance().flush();
+        // Reopen so that the foods are in the indexed base rather than the overlay
+        FoodDatabase database = new FoodDatabase(directory, false);
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            for (int u = 0; writing.get(); u++) {
+                int i = (u * 7919) % FOODS;
+                database.updateFood(new BasicFood("food " + i, new String[] {"kw" + (i % 1000)}, u % 700));
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(cores + " cores, " + FOODS + " foods, one writer updating foods");
+        // The first run also warms up the JIT
+        run(database, 1, runNanos);
+        double single = 0;
+        for (int threads = 1; threads <= 2 * cores; threads *= 2) {
+            double perSecond = run(database, threads, runNanos);
+            if (threads == 1) {
+                single = perSecond;
+            }
+            System.out.printf("%3d threads: %,12.0f reads/s  (%.2fx)%n", threads, perSecond, perSecond / single);
+        }
+        writing.set(false);
+        System.exit(0);
+    }
+
+    /**
+     * Run readers for a fixed time.
+     *
+     * @param database The database
+     * @param threads The number of reader threads
+     * @param runNanos How long to run
+     * @return The reads per second over all threads
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static double run(FoodDatabase database, int threads, long runNanos) throws InterruptedException {
+        LongAdder reads = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> readers = new ArrayList<>();
+        long[] deadline = new long[1];
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            Thread reader = new Thread(() -> {
+                List<Food> results = new ArrayList<>();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long count = 0;
+                for (int n = seed * 7_777; System.nanoTime() < deadline[0]; n++) {
+                    int i = (n * 31) % FOODS;
+                    database.getFoodByIdentifier("food " + i);
+                    database.searchFoods("kw" + (i % 1000), results);
+                    count += 2;
+                }
+                reads.add(count);
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        deadline[0] = System.nanoTime() + runNanos;
+        start.countDown();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        return reads.sum() * 1e9 / runNanos;
+    }
+}
@@ -0,0 +1,116 @@
+package com.yada.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Latency check for typo-tolerant search. Builds a catalog of 500,000
+ * foods over a vocabulary of generated words, then runs misspelled
+ * queries at the maximum edit distance and checks the 99th percentile
+ * against the 5 ms budget. It also checks that each query finds the food
+ * its typo was made from.
+ *
+ * Run with: java -Xmx2g -cp classes:test-classes com.yada.model.FoodFuzzySearchLatencyTest
+ * Exits with an AssertionError if the budget is missed.
+ */
+public class FoodFuzzySearchLatencyTest {
+    private static final long P99_BUDGET_NANOS = 5_000_000;
+
+    private static final int FOODS = 500_000;
+    private static final int VOCABULARY = 60_000;
+    private static final int WARMUP_QUERIES = 30_000;
+    private static final int MEASURED_QUERIES = 5_000;
+
+    /**
+     * Run the check.
+     *
+     * @param args Ignored
+     */
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        String[] words = new String[VOCABULARY];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = word(random, 4 + random.nextInt(8));
+        }
+
+        List<Food> foods = new ArrayList<>(FOODS);
+        for (int i = 0; i < FOODS; i++) {
+            String identifier = words[random.nextInt(VOCABULARY)] + " " + words[random.nextInt(VOCABULARY)]
+                    + " " + words[random.nextInt(VOCABULARY)];
+            foods.add(new BasicFood(identifier,
+                    new String[] {words[random.nextInt(VOCABULARY)], words[random.nextInt(VOCABULARY)]}, 100));
+        }
+        long start = System.nanoTime();
+        FoodCatalog catalog = FoodCatalog.build(foods);
+        System.out.println("Indexed " + FOODS + " foods in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        long[] latencies = new long[MEASURED_QUERIES];
+        int misses = 0;
+        for (int q = 0; q < WARMUP_QUERIES + MEASURED_QUERIES; q++) {
+            Food target = foods.get(random.nextInt(FOODS));
+            String word = target.getIdentifier().substring(0, target.getIdentifier().indexOf(' '));
+            String query = typo(random, word);
+
+            long before = System.nanoTime();
+            List<Food> results = catalog.fuzzySearch(Food.tokenize(query),
+                    FoodDatabase.MAX_FUZZY_DISTANCE, 20);
+            long elapsed = System.nanoTime() - before;
+
+            if (q >= WARMUP_QUERIES) {
+                latencies[q - WARMUP_QUERIES] = elapsed;
+                if (results.isEmpty()) {
+                    misses++;
+                }
+            }
+        }
+
+        Arrays.sort(latencies);
+        long p50 = latencies[MEASURED_QUERIES / 2];
+        long p99 = latencies[MEASURED_QUERIES * 99 / 100];
+        System.out.printf("p50 %.2f ms, p99 %.2f ms, max %.2f ms, %d queries without results%n",
+                p50 / 1e6, p99 / 1e6, latencies[MEASURED_QUERIES - 1] / 1e6, misses);
+        if (misses > 0) {
+            throw new AssertionError(misses + " misspelled queries found nothing");
+        }
+        if (p99 > P99_BUDGET_NANOS) {
+            throw new AssertionError("p99 " + p99 / 1e6 + " ms is over the 5 ms budget");
+        }
+    }
+
+    /**
+     * Generate a random lowercase word.
+     *
+     * @param random The random source
+     * @param length The length
+     * @return The word
+     */
+    private static String word(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Make one typo in a word: drop, double, or change a letter.
+     *
+     * @param random The random source
+     * @param word The word
+     * @return The misspelled word
+     */
+    private static String typo(Random random, String word) {
+        int at = random.nextInt(word.length());
+        switch (random.nextInt(3)) {
+            case 0:
+                return word.substring(0, at) + word.substring(at + 1);
+            case 1:
+                return word.substring(0, at + 1) + word.substring(at);
+            default:
+                char replacement = (char) ('a' + (word.charAt(at) - 'a' + 1) % 26);
+                return word.substring(0, at) + replacement + word.substring(at + 1);
+        }
+    }
+}
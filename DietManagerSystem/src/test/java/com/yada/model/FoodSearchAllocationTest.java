@@ -0,0 +1,71 @@
+package com.yada.model;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Allocation regression check for the search hot path. After warm-up, a
+ * search into a reused result list may allocate only its query tokens,
+ * independent of the catalog size.
+ *
+ * Run with: java -cp classes:test-classes com.yada.model.FoodSearchAllocationTest
+ * Exits with an AssertionError if a search allocates more than the budget.
+ */
+public class FoodSearchAllocationTest {
+    /**
+     * Bytes a steady-state search may allocate: the normalized query, its
+     * term array and the term strings.
+     */
+    private static final long BYTES_PER_SEARCH_BUDGET = 256;
+
+    private static final int FOODS = 20_000;
+    private static final int WARMUP_SEARCHES = 20_000;
+    private static final int MEASURED_SEARCHES = 10_000;
+
+    /**
+     * Run the check.
+     *
+     * @param args Ignored
+     */
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("Thread allocation counting is not supported; skipped");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        List<Food> foods = new ArrayList<>();
+        for (int i = 0; i < FOODS; i++) {
+            foods.add(new BasicFood("Food " + i + (i % 97 == 0 ? " cheddar cheese" : " brown rice"),
+                    new String[] {"kw" + (i % 1000), i % 89 == 0 ? "snack" : "meal"}, i % 500));
+        }
+        // An overlay entry covers the filtering of replaced base foods too
+        FoodCatalog catalog = FoodCatalog.build(foods)
+                .with(new BasicFood("Food 0 cheddar cheese", new String[] {"snack"}, 120));
+
+        String[] queries = {"cheddar chee", "brown rice", "snack", "rice kw417", "nothing matches"};
+        List<Food> results = new ArrayList<>(FOODS);
+        long matched = 0;
+        for (int i = 0; i < WARMUP_SEARCHES; i++) {
+            catalog.search(Food.tokenize(queries[i % queries.length]), results);
+            matched += results.size();
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED_SEARCHES; i++) {
+            catalog.search(Food.tokenize(queries[i % queries.length]), results);
+            matched += results.size();
+        }
+        long perSearch = (threads.getThreadAllocatedBytes(thread) - before) / MEASURED_SEARCHES;
+
+        System.out.println("Allocated " + perSearch + " bytes per search (" + matched + " matches)");
+        if (perSearch > BYTES_PER_SEARCH_BUDGET) {
+            throw new AssertionError("Search allocated " + perSearch + " bytes, budget is "
+                    + BYTES_PER_SEARCH_BUDGET);
+        }
+    }
+}